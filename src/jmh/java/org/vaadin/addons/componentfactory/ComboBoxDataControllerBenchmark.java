@@ -0,0 +1,184 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.component.Html;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.internal.PendingJavaScriptInvocation;
+import com.vaadin.flow.data.renderer.ComponentRenderer;
+import com.vaadin.flow.data.renderer.TemplateRenderer;
+import com.vaadin.flow.internal.JsonCodec;
+import com.vaadin.flow.server.DefaultDeploymentConfiguration;
+import com.vaadin.flow.server.VaadinService;
+import com.vaadin.flow.server.VaadinServlet;
+import com.vaadin.flow.server.VaadinServletService;
+import com.vaadin.flow.server.VaadinSession;
+import elemental.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the server-side data pipeline of the combo box: a
+ * {@code setRequestedRange} call from the connector, the resulting data
+ * provider fetch in the data communicator, the update queue and the encoding
+ * of the JSON that is sent to the client.
+ * <p>
+ * Run with {@code mvn -Pbenchmarks test}. Additional JMH options can be passed
+ * with {@code -Djmh.args="ComboBoxDataControllerBenchmark -p size=1000"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComboBoxDataControllerBenchmark {
+
+    public enum RendererType {
+        NONE, TEMPLATE, COMPONENT
+    }
+
+    /**
+     * Filters typed by the simulated user, from unselective to very selective
+     */
+    private static final String[] FILTERS = { "", "1", "12", "123", "item 9",
+            "99", "5" };
+
+    @Param({ "100", "10000", "100000", "1000000" })
+    public int size;
+
+    @Param({ "NONE", "TEMPLATE", "COMPONENT" })
+    public RendererType renderer;
+
+    private UI ui;
+    private MultiSelectComboBox<String> comboBox;
+    private ComboBoxDataController<String> dataController;
+    private int filterIndex;
+    private int page;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        VaadinService service = new VaadinServletService(new VaadinServlet(),
+                new DefaultDeploymentConfiguration(
+                        ComboBoxDataControllerBenchmark.class,
+                        new Properties()));
+        VaadinSession session = new BenchmarkSession(service);
+        VaadinSession.setCurrent(session);
+
+        ui = new UI();
+        ui.getInternals().setSession(session);
+        UI.setCurrent(ui);
+
+        List<String> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add("Item " + i);
+        }
+
+        comboBox = new MultiSelectComboBox<>();
+        comboBox.setItems(items);
+        if (renderer == RendererType.TEMPLATE) {
+            comboBox.setRenderer(
+                    TemplateRenderer.<String> of("<b>[[item.name]]</b>")
+                            .withProperty("name", item -> item));
+        } else if (renderer == RendererType.COMPONENT) {
+            comboBox.setRenderer(new ComponentRenderer<Html, String>(
+                    item -> new Html("<b>" + item + "</b>")));
+        }
+        ui.add(comboBox);
+        dataController = comboBox.getDataController();
+
+        // Flush everything caused by the initial attach
+        roundTrip(null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        UI.setCurrent(null);
+        VaadinSession.setCurrent(null);
+    }
+
+    /**
+     * Simulates the request sent by the connector when the user types into the
+     * combo box, which changes the filter and requests the first page.
+     */
+    @Benchmark
+    public void keystroke(Blackhole blackhole) {
+        String filter = FILTERS[filterIndex++ % FILTERS.length];
+        dataController.setRequestedRange(0, comboBox.getPageSize(), filter,
+                0);
+        roundTrip(blackhole);
+    }
+
+    /**
+     * Simulates the requests sent by the connector when the user scrolls
+     * through the unfiltered items, one page at a time.
+     */
+    @Benchmark
+    public void scroll(Blackhole blackhole) {
+        int pageSize = comboBox.getPageSize();
+        int pageCount = Math.max(1, Math.min(size / pageSize, 20));
+        dataController.setRequestedRange((page++ % pageCount) * pageSize,
+                pageSize, "", 0);
+        roundTrip(blackhole);
+    }
+
+    private void roundTrip(Blackhole blackhole) {
+        ui.getInternals().getStateTree().runExecutionsBeforeClientResponse();
+        // Marks the nodes as initialized in the client, like writing the
+        // changes to the response does. Otherwise each flush would reset the
+        // data communicator and resend the whole range.
+        ui.getInternals().getStateTree().collectChanges(change -> {
+        });
+        for (PendingJavaScriptInvocation invocation : ui.getInternals()
+                .dumpPendingJavaScriptInvocations()) {
+            List<Object> parameters = invocation.getInvocation()
+                    .getParameters();
+            // Encode the parameters the same way as they would be when
+            // writing the response
+            for (Object parameter : parameters) {
+                Object encoded = JsonCodec.encodeWithTypeInfo(parameter);
+                if (blackhole != null) {
+                    blackhole.consume(encoded);
+                }
+            }
+            // Confirm each update like the connector does once applied
+            if (invocation.getInvocation().getExpression()
+                    .contains("$connector.applyUpdate")) {
+                JsonObject update = (JsonObject) parameters
+                        .get(parameters.size() - 1);
+                dataController
+                        .confirmUpdate((int) update.getNumber("updateId"));
+            }
+        }
+    }
+
+    /**
+     * Session that is always considered to be locked by the benchmark thread
+     */
+    private static final class BenchmarkSession extends VaadinSession {
+
+        private BenchmarkSession(VaadinService service) {
+            super(service);
+        }
+
+        @Override
+        public boolean hasLock() {
+            return true;
+        }
+    }
+}
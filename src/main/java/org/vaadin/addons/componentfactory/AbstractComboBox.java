@@ -36,6 +36,8 @@ import com.vaadin.flow.shared.Registration;
 import java.util.Collection;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Provides base functionality for combo box related components, such as
@@ -135,6 +137,8 @@ public abstract class AbstractComboBox<TComponent extends AbstractComboBox<TComp
         // Disable template warnings
         getElement().setAttribute("suppress-template-warning", true);
 
+        FieldValidationUtil.disableClientValidation(this);
+
         // Notify data communicator when selection changes, which allows to
         // free up items / keys in the KeyMapper that are not used anymore in
         // the selection
@@ -169,8 +173,9 @@ public abstract class AbstractComboBox<TComponent extends AbstractComboBox<TComp
      * Gets the page size, which is the number of items fetched at a time from
      * the data provider.
      * <p>
-     * The page size is also the largest number of items that can support
-     * client-side filtering. If you provide more items than the page size, the
+     * Unless set otherwise with {@link #setClientSideFilterThreshold(int)},
+     * the page size is also the largest number of items that can support
+     * client-side filtering. If you provide more items than that, the
      * component has to fall back to server-side filtering.
      * <p>
      * The default page size is 50.
@@ -188,8 +193,9 @@ public abstract class AbstractComboBox<TComponent extends AbstractComboBox<TComp
      * backend; when the overlay has room to render more new items than the page
      * size, multiple "pages" will be requested at once.
      * <p>
-     * The page size is also the largest number of items that can support
-     * client-side filtering. If you provide more items than the page size, the
+     * Unless set otherwise with {@link #setClientSideFilterThreshold(int)},
+     * the page size is also the largest number of items that can support
+     * client-side filtering. If you provide more items than that, the
      * component has to fall back to server-side filtering.
      * <p>
      * Setting the page size after the ComboBox has been rendered effectively
@@ -412,7 +418,7 @@ public abstract class AbstractComboBox<TComponent extends AbstractComboBox<TComp
         Objects.requireNonNull(itemLabelGenerator,
                 "The item label generator can not be null");
         this.itemLabelGenerator = itemLabelGenerator;
-        dataController.reset();
+        dataController.onItemLabelGeneratorChange();
         if (getValue() != null) {
             refreshValue();
         }
@@ -428,6 +434,626 @@ public abstract class AbstractComboBox<TComponent extends AbstractComboBox<TComp
         return itemLabelGenerator;
     }
 
+    /**
+     * Sets whether the default filter of a list data provider, as set with
+     * {@link #setItems(Collection)} or
+     * {@link #setDataProvider(ListDataProvider)}, looks up the matching items
+     * from an n-gram index of the item labels instead of testing every item.
+     * <p>
+     * The index is built on the first filter request that is handled on the
+     * server, and is rebuilt after the items are refreshed, which makes this
+     * useful for large data sets that change rarely. It is disabled by
+     * default.
+     * <p>
+     * The index has no effect with an item filter set with
+     * {@link #setDataProvider(ComboBox.ItemFilter, ListDataProvider)}, as it
+     * can match items in ways that do not depend on their labels, so every
+     * item is tested with it.
+     *
+     * @param indexedFiltering
+     *            {@code true} to use an index for filtering, {@code false}
+     *            otherwise
+     */
+    public void setIndexedFiltering(boolean indexedFiltering) {
+        dataController.setIndexedFiltering(indexedFiltering);
+    }
+
+    /**
+     * Gets whether the default filter of a list data provider uses an n-gram
+     * index of the item labels.
+     *
+     * @return {@code true} if an index is used for filtering, {@code false}
+     *         otherwise
+     * @see #setIndexedFiltering(boolean)
+     */
+    public boolean isIndexedFiltering() {
+        return dataController.isIndexedFiltering();
+    }
+
+    /**
+     * Sets how the default filter of a list data provider matches the filter
+     * text typed by the user against the item labels. The default is
+     * {@link ComboBoxFilterMode#CONTAINS}.
+     * <p>
+     * With {@link ComboBoxFilterMode#STARTS_WITH}, server-side filtering looks
+     * up the matching items from the item labels sorted in alphabetical order,
+     * instead of testing every item.
+     * <p>
+     * The filter mode has no effect when using a custom item filter or a
+     * callback data provider.
+     *
+     * @param filterMode
+     *            the filter mode to use, not {@code null}
+     */
+    public void setFilterMode(ComboBoxFilterMode filterMode) {
+        dataController.setFilterMode(filterMode);
+    }
+
+    /**
+     * Gets how the default filter of a list data provider matches the filter
+     * text typed by the user against the item labels.
+     *
+     * @return the filter mode, not {@code null}
+     * @see #setFilterMode(ComboBoxFilterMode)
+     */
+    public ComboBoxFilterMode getFilterMode() {
+        return dataController.getFilterMode();
+    }
+
+    /**
+     * Sets where the items are filtered. The default is
+     * {@link ComboBoxFilterLocation#AUTO}, which filters in the client-side
+     * if the data provider does not have more items than the client-side
+     * filter threshold, which is the page size by default. Deciding this
+     * fetches up to one item more than the threshold from the data provider
+     * whenever the items are refreshed, which can be avoided by setting the
+     * location explicitly.
+     * <p>
+     * Filtering is always done in the server-side when using a custom item
+     * filter or a callback data provider.
+     *
+     * @param filterLocation
+     *            where to filter the items, not {@code null}
+     */
+    public void setFilterLocation(ComboBoxFilterLocation filterLocation) {
+        dataController.setFilterLocation(filterLocation);
+    }
+
+    /**
+     * Gets where the items are filtered.
+     *
+     * @return the filter location, not {@code null}
+     * @see #setFilterLocation(ComboBoxFilterLocation)
+     */
+    public ComboBoxFilterLocation getFilterLocation() {
+        return dataController.getFilterLocation();
+    }
+
+    /**
+     * Sets the largest number of items that are filtered in the client-side
+     * when the filter location is {@link ComboBoxFilterLocation#AUTO}. If the
+     * data provider has no more items than this, all items are sent to the
+     * browser at once, in the compact columnar format, and filtering the items
+     * needs no requests to the server. Larger data sets are loaded page by
+     * page and filtered in the server-side as before.
+     * <p>
+     * With {@link ComboBoxFilterLocation#CLIENT}, at most this number of items
+     * is sent to the browser. By default, the threshold is the page size.
+     *
+     * @param clientSideFilterThreshold
+     *            the largest number of items to filter in the client-side, or
+     *            0 to use the page size
+     */
+    public void setClientSideFilterThreshold(int clientSideFilterThreshold) {
+        dataController.setClientSideFilterThreshold(clientSideFilterThreshold);
+    }
+
+    /**
+     * Gets the largest number of items that are filtered in the client-side.
+     *
+     * @return the client-side filter threshold, which is the page size unless
+     *         set explicitly
+     * @see #setClientSideFilterThreshold(int)
+     */
+    public int getClientSideFilterThreshold() {
+        return dataController.getClientSideFilterThreshold();
+    }
+
+    /**
+     * Sets whether items that are filtered in the client-side are filtered in
+     * a Web Worker instead of the main thread of the browser. This keeps
+     * typing responsive with tens of thousands of items, as the labels are
+     * scanned in the background and only the results of the latest filter
+     * text are shown. The browser falls back to filtering in the main thread
+     * if no worker can be started, for example because the content security
+     * policy of the page does not allow workers from blob URLs.
+     * <p>
+     * Filtering in a worker is disabled by default.
+     *
+     * @param workerFiltering
+     *            {@code true} to filter in a Web Worker, {@code false} to
+     *            filter in the main thread
+     * @see #setClientSideFilterThreshold(int)
+     */
+    public void setWorkerFiltering(boolean workerFiltering) {
+        ComboBoxConnectorUtil.setWorkerFiltering(this, workerFiltering);
+    }
+
+    /**
+     * Gets whether items that are filtered in the client-side are filtered in
+     * a Web Worker.
+     *
+     * @return {@code true} if filtering in a Web Worker, {@code false}
+     *         otherwise
+     * @see #setWorkerFiltering(boolean)
+     */
+    public boolean isWorkerFiltering() {
+        return ComboBoxConnectorUtil.isWorkerFiltering(this);
+    }
+
+    /**
+     * Sets whether the keys that identify items in the browser are derived
+     * from the identifiers of the items in the data provider, as returned by
+     * {@link DataProvider#getId(Object)}. An item then keeps the same key when
+     * the filter changes or the items are reset, so the selection does not
+     * need to be sent again, and items kept in the browser stay valid.
+     * Otherwise, keys are generated counters that can change.
+     * <p>
+     * The key is a salted hash of the identifier, so it does not reveal the
+     * identifier to the browser. Stable keys are disabled by default.
+     *
+     * @param stableItemKeys
+     *            {@code true} to derive keys from item identifiers,
+     *            {@code false} to generate keys
+     */
+    public void setStableItemKeys(boolean stableItemKeys) {
+        dataController.setStableKeys(stableItemKeys);
+        refreshValue();
+    }
+
+    /**
+     * Gets whether the keys that identify items in the browser are derived
+     * from the identifiers of the items in the data provider.
+     *
+     * @return {@code true} if keys are derived from item identifiers,
+     *         {@code false} otherwise
+     * @see #setStableItemKeys(boolean)
+     */
+    public boolean isStableItemKeys() {
+        return dataController.isStableKeys();
+    }
+
+    /**
+     * Sets whether refreshing all items of the data provider is postponed
+     * while the dropdown is closed. When enabled, a
+     * {@link DataProvider#refreshAll()} on a closed combo box only marks its
+     * items as stale, without querying the data provider, and the items are
+     * reloaded once when the dropdown is opened next time. Several refreshes
+     * during one request are handled as one also when the dropdown is open.
+     * Refreshes of single items with {@link DataProvider#refreshItem(Object)}
+     * are not affected. Deferred refresh is disabled by default.
+     *
+     * @param deferredRefresh
+     *            {@code true} to postpone refreshing while the dropdown is
+     *            closed, {@code false} to refresh right away
+     */
+    public void setDeferredRefresh(boolean deferredRefresh) {
+        dataController.setDeferredRefresh(deferredRefresh);
+    }
+
+    /**
+     * Gets whether refreshing all items of the data provider is postponed
+     * while the dropdown is closed.
+     *
+     * @return {@code true} if refreshing is postponed, {@code false} otherwise
+     * @see #setDeferredRefresh(boolean)
+     */
+    public boolean isDeferredRefresh() {
+        return dataController.isDeferredRefresh();
+    }
+
+    /**
+     * Sets whether this combo box receives the data change events of its data
+     * provider through a listener that is shared with all other combo boxes
+     * using the same data provider instance, in any session. Use this when
+     * many combo boxes show the items of one application scoped data provider:
+     * the data provider then keeps one listener instead of one per combo box,
+     * and does not keep combo boxes of closed UIs reachable.
+     * <p>
+     * Events fired while holding the lock of the session of this combo box,
+     * which is the case when refreshing the data provider in a request
+     * handler of the same session, are handled right away as before. Events
+     * fired in other threads are handled later with {@link UI#access}, once
+     * per UI for all combo boxes in it, so the changes reach the browser with
+     * the next response, or right away when using server push. The shared
+     * listener is disabled by default.
+     *
+     * @param sharedDataProviderListener
+     *            {@code true} to use a listener shared with other combo
+     *            boxes, {@code false} to register a listener for this combo
+     *            box only
+     */
+    public void setSharedDataProviderListener(
+            boolean sharedDataProviderListener) {
+        dataController
+                .setSharedDataProviderListener(sharedDataProviderListener);
+    }
+
+    /**
+     * Gets whether this combo box receives the data change events of its data
+     * provider through a listener shared with other combo boxes.
+     *
+     * @return {@code true} if using a shared listener, {@code false}
+     *         otherwise
+     * @see #setSharedDataProviderListener(boolean)
+     */
+    public boolean isSharedDataProviderListener() {
+        return dataController.isSharedDataProviderListener();
+    }
+
+    /**
+     * Sets the maximum number of pages of items that this combo box keeps in
+     * a server-side cache, per filter text. When the user types the same
+     * filter again, or reopens the dropdown, the cached pages and item counts
+     * are used instead of querying the data provider. The least recently used
+     * pages are evicted first.
+     * <p>
+     * The cache is cleared when the data provider is refreshed, or when the
+     * data provider, the page size or the item label generator is changed.
+     * Changes in the backing data that are not signaled with
+     * {@link DataProvider#refreshAll()} are not reflected while the pages are
+     * cached. The cache is disabled by default.
+     *
+     * @param maxPages
+     *            the maximum number of cached pages, or 0 to disable the cache
+     */
+    public void setPageCacheSize(int maxPages) {
+        dataController.setPageCacheSize(maxPages);
+    }
+
+    /**
+     * Gets the maximum number of pages of items that this combo box keeps in a
+     * server-side cache.
+     *
+     * @return the maximum number of cached pages, 0 if the cache is disabled
+     * @see #setPageCacheSize(int)
+     */
+    public int getPageCacheSize() {
+        return dataController.getPageCacheSize();
+    }
+
+    /**
+     * Sets an application-wide cache for the results of the data provider of
+     * this combo box. Combo boxes in different sessions that use the same
+     * cache and data set id share the results of identical queries, which
+     * avoids running the same backend query for each session.
+     * <p>
+     * The data set id must identify the items and filtering of the data
+     * provider, including the item label generator, so it should only be
+     * shared by combo boxes that show the same items to every user. The filter
+     * mode and locale of the combo box are part of the cached queries.
+     * Refreshing all items of the data provider of this combo box invalidates
+     * the cached results of the data set, while refreshing a single item only
+     * invalidates the results that it may affect.
+     *
+     * @param sharedResultCache
+     *            the shared cache to use, or {@code null} to not use a shared
+     *            cache
+     * @param datasetId
+     *            the id of the data set, not {@code null} if a cache is set
+     * @see ComboBoxSharedResultCache
+     */
+    public void setSharedResultCache(
+            ComboBoxSharedResultCache sharedResultCache, String datasetId) {
+        dataController.setSharedResultCache(sharedResultCache, datasetId);
+    }
+
+    /**
+     * Sets whether items requested by the browser are loaded in the
+     * background, so that a slow data provider does not block the request
+     * thread or hold the session lock while it is queried. The data provider
+     * is queried in the executor set with {@link #setFetchExecutor(Executor)},
+     * and the items are sent to the browser once they have been loaded.
+     * <p>
+     * Delivering the items as soon as they are loaded requires server push to
+     * be enabled, see {@link com.vaadin.flow.component.page.Push}. Without
+     * push, they are delivered with the next request from the browser. The
+     * data provider must not rely on {@link com.vaadin.flow.server.VaadinSession}
+     * or {@link UI} being available in the current thread. Items of in-memory
+     * list data providers are always fetched in the request thread. Async
+     * fetching is disabled by default.
+     * <p>
+     * When the user changes the filter or scrolls on before the items have
+     * been loaded, the running query is cancelled by interrupting its thread,
+     * so long-running queries should respond to interruption. Queries that have
+     * not started yet are skipped.
+     *
+     * @param asyncFetching
+     *            {@code true} to load items in the background, {@code false}
+     *            to load them in the request thread
+     * @see #setAsyncDataProvider(AsyncFetchItemsCallback, SerializableFunction)
+     */
+    public void setAsyncFetching(boolean asyncFetching) {
+        dataController.setAsyncFetching(asyncFetching);
+    }
+
+    /**
+     * Gets whether items requested by the browser are loaded in the
+     * background.
+     *
+     * @return {@code true} if items are loaded in the background,
+     *         {@code false} otherwise
+     * @see #setAsyncFetching(boolean)
+     */
+    public boolean isAsyncFetching() {
+        return dataController.isAsyncFetching();
+    }
+
+    /**
+     * Sets the executor that is used for querying the data provider when
+     * async fetching is enabled. By default, a new virtual thread is used for
+     * each query when the JVM supports virtual threads, and the common
+     * fork-join pool otherwise.
+     *
+     * @param fetchExecutor
+     *            the executor to use, or {@code null} to use the default
+     *            executor
+     * @see #setAsyncFetching(boolean)
+     */
+    public void setFetchExecutor(Executor fetchExecutor) {
+        dataController.setFetchExecutor(fetchExecutor);
+    }
+
+    /**
+     * Sets an asynchronous data provider using the given fetch items callback
+     * and size callback. The callbacks return futures, and the items are sent
+     * to the browser once the futures have completed, without holding the
+     * session lock while waiting for them. See
+     * {@link #setAsyncFetching(boolean)} for the requirements of delivering
+     * the items. The returned futures are cancelled when their results are not
+     * needed anymore, because the user has changed the filter or the requested
+     * range in the meantime.
+     * <p>
+     * The request thread never waits for the futures. Items that have not been
+     * loaded yet, for example right after refreshing the data provider, are
+     * answered with no items until they have been loaded. When a future
+     * fails, the drop-down shows no items and the failure is reported to the
+     * error handler of the session.
+     * <p>
+     * Changing the combo box's data provider resets its current value to
+     * {@code null}.
+     *
+     * @param fetchItems
+     *            a callback for fetching items, not <code>null</code>
+     * @param sizeCallback
+     *            a callback for getting the count of items, not
+     *            <code>null</code>
+     */
+    public void setAsyncDataProvider(AsyncFetchItemsCallback<TItem> fetchItems,
+            SerializableFunction<String, CompletableFuture<Integer>> sizeCallback) {
+        dataController.setAsyncDataProvider(fetchItems, sizeCallback);
+    }
+
+    /**
+     * Sets whether pages of items are sent to the browser in a compact
+     * columnar format. Instead of repeating the property names, such as
+     * {@code key} and {@code label}, for every item, each page lists the
+     * property names once followed by the values of each property, which
+     * reduces the size of the response and the time needed for parsing it.
+     * <p>
+     * All properties added by data generators and renderers are included. A
+     * property that is {@code null} for an item is left out of the item in the
+     * browser. The compact format is disabled by default.
+     *
+     * @param compactDataFormat
+     *            {@code true} to use the compact format, {@code false} to send
+     *            every item as a separate object
+     */
+    public void setCompactDataFormat(boolean compactDataFormat) {
+        dataController.setCompactDataFormat(compactDataFormat);
+    }
+
+    /**
+     * Gets whether pages of items are sent to the browser in a compact
+     * columnar format.
+     *
+     * @return {@code true} if the compact format is used, {@code false}
+     *         otherwise
+     * @see #setCompactDataFormat(boolean)
+     */
+    public boolean isCompactDataFormat() {
+        return dataController.isCompactDataFormat();
+    }
+
+    /**
+     * Sets the maximum number of item ranges per second that the browser can
+     * request. Requests exceeding the limit are dropped and counted in
+     * {@link #getRequestGovernor()}, and the browser sends its latest request
+     * again once the next request is allowed. As this delays showing the
+     * items, the limit is meant for protecting the server from misbehaving
+     * clients, and should be well above what regular use needs. There is no
+     * limit by default.
+     *
+     * @param maxRequestsPerSecond
+     *            the maximum number of requests per second, or 0 for no limit
+     */
+    public void setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+        dataController.getRequestGovernor()
+                .setMaxRequestsPerSecond(maxRequestsPerSecond);
+    }
+
+    /**
+     * Gets the maximum number of item ranges per second that the browser can
+     * request.
+     *
+     * @return the maximum number of requests per second, or 0 for no limit
+     * @see #setMaxRequestsPerSecond(int)
+     */
+    public int getMaxRequestsPerSecond() {
+        return dataController.getRequestGovernor().getMaxRequestsPerSecond();
+    }
+
+    /**
+     * Sets the maximum number of items that the browser can request at once.
+     * Longer ranges are shortened to this length, so the limit should be a
+     * multiple of the page size, and at least twice the page size to not
+     * affect regular scrolling. The items that are sent at once for filtering
+     * in the client-side are not limited, see
+     * {@link #setClientSideFilterThreshold(int)}. There is no limit by default.
+     *
+     * @param maxRequestedRangeLength
+     *            the maximum number of items per request, or 0 for no limit
+     */
+    public void setMaxRequestedRangeLength(int maxRequestedRangeLength) {
+        dataController.getRequestGovernor()
+                .setMaxRangeLength(maxRequestedRangeLength);
+    }
+
+    /**
+     * Gets the maximum number of items that the browser can request at once.
+     *
+     * @return the maximum number of items per request, or 0 for no limit
+     * @see #setMaxRequestedRangeLength(int)
+     */
+    public int getMaxRequestedRangeLength() {
+        return dataController.getRequestGovernor().getMaxRangeLength();
+    }
+
+    /**
+     * Gets the governor that decides which item ranges requested by the
+     * browser are fetched, for reading how many requests it has accepted,
+     * answered as duplicates, coalesced, throttled or clamped.
+     *
+     * @return the request governor of this combo box, not {@code null}
+     */
+    public ComboBoxRequestGovernor getRequestGovernor() {
+        return dataController.getRequestGovernor();
+    }
+
+    /**
+     * Sets how long the browser waits after the user has stopped typing
+     * before requesting the items matching the filter text. A shorter time
+     * makes filtering feel faster with a fast data provider, while a longer
+     * time avoids sending a request for every typed character to a slow data
+     * provider. Setting the time disables the adaptive debounce set with
+     * {@link #setAdaptiveFilterDebounce(int, int)}.
+     * <p>
+     * The default debounce time is 500 milliseconds.
+     *
+     * @param debounceTime
+     *            the debounce time in milliseconds, not negative
+     */
+    public void setFilterDebounceTime(int debounceTime) {
+        ComboBoxConnectorUtil.setFilterDebounceTime(this, debounceTime);
+    }
+
+    /**
+     * Gets how long the browser waits after the user has stopped typing
+     * before requesting the items matching the filter text, when the adaptive
+     * debounce is not enabled.
+     *
+     * @return the debounce time in milliseconds
+     * @see #setFilterDebounceTime(int)
+     */
+    public int getFilterDebounceTime() {
+        return ComboBoxConnectorUtil.getFilterDebounceTime(this);
+    }
+
+    /**
+     * Enables the adaptive filter debounce. Instead of waiting a fixed time
+     * after the user has stopped typing, the browser waits for about as long
+     * as the previous requests for items took to be answered, limited to the
+     * given bounds. Until the first request has been answered, the maximum
+     * time is used.
+     * <p>
+     * Use {@link #setFilterDebounceTime(int)} to switch back to a fixed
+     * debounce time.
+     *
+     * @param minDebounceTime
+     *            the shortest debounce time in milliseconds, not negative
+     * @param maxDebounceTime
+     *            the longest debounce time in milliseconds, not shorter than
+     *            the shortest time
+     */
+    public void setAdaptiveFilterDebounce(int minDebounceTime,
+            int maxDebounceTime) {
+        ComboBoxConnectorUtil.setAdaptiveFilterDebounce(this, minDebounceTime,
+                maxDebounceTime);
+    }
+
+    /**
+     * Gets whether the filter debounce time adapts to the measured response
+     * time of the server.
+     *
+     * @return {@code true} if the adaptive debounce is enabled, {@code false}
+     *         if a fixed debounce time is used
+     * @see #setAdaptiveFilterDebounce(int, int)
+     */
+    public boolean isAdaptiveFilterDebounce() {
+        return ComboBoxConnectorUtil.isAdaptiveFilterDebounce(this);
+    }
+
+    /**
+     * Sets the maximum number of pages that the browser requests ahead of
+     * the scrolling direction, so that they are available before they are
+     * scrolled into view. The browser requests as many pages as are scrolled
+     * past during one round trip to the server, up to this number. Prefetched
+     * pages are left out first when the request rate or the requested range
+     * length is limited.
+     * <p>
+     * The default is 2 pages.
+     *
+     * @param prefetchPageCount
+     *            the maximum number of prefetched pages, or 0 to disable
+     *            prefetching
+     */
+    public void setPrefetchPageCount(int prefetchPageCount) {
+        ComboBoxConnectorUtil.setPrefetchPageCount(this, prefetchPageCount);
+    }
+
+    /**
+     * Gets the maximum number of pages that the browser requests ahead of
+     * the scrolling direction.
+     *
+     * @return the maximum number of prefetched pages
+     * @see #setPrefetchPageCount(int)
+     */
+    public int getPrefetchPageCount() {
+        return ComboBoxConnectorUtil.getPrefetchPageCount(this);
+    }
+
+    /**
+     * Sets the number of recent filter texts for which the browser keeps the
+     * fetched items. When the user returns to one of these filters, for
+     * example by deleting a typed character, the kept items are shown right
+     * away and refreshed from the server in the background. The kept items
+     * are dropped whenever the data provider is refreshed.
+     * <p>
+     * Items are only kept when filtering in the server-side with
+     * {@link #setStableItemKeys(boolean) stable item keys}, as the generated
+     * keys of items that are not shown anymore are released in the
+     * server-side. The default is 5 filter texts.
+     *
+     * @param clientFilterCacheSize
+     *            the number of filter texts to keep items for, or 0 to disable
+     *            keeping items
+     */
+    public void setClientFilterCacheSize(int clientFilterCacheSize) {
+        ComboBoxConnectorUtil.setClientFilterCacheSize(this,
+                clientFilterCacheSize);
+    }
+
+    /**
+     * Gets the number of recent filter texts for which the browser keeps the
+     * fetched items.
+     *
+     * @return the number of filter texts to keep items for
+     * @see #setClientFilterCacheSize(int)
+     */
+    public int getClientFilterCacheSize() {
+        return ComboBoxConnectorUtil.getClientFilterCacheSize(this);
+    }
+
     /**
      * Generates a string label for a data item using the current item label
      * generator
@@ -492,8 +1118,6 @@ public abstract class AbstractComboBox<TComponent extends AbstractComboBox<TComp
         super.onAttach(attachEvent);
         initConnector();
         dataController.onAttach();
-
-        FieldValidationUtil.disableClientValidation(this);
     }
 
     @Override
@@ -789,8 +1413,9 @@ public abstract class AbstractComboBox<TComponent extends AbstractComboBox<TComp
      * Called by the client-side connector, delegates to data controller
      */
     @ClientCallable
-    private void setRequestedRange(int start, int length, String filter) {
-        dataController.setRequestedRange(start, length, filter);
+    private void setRequestedRange(int start, int length, String filter,
+            int prefetch) {
+        dataController.setRequestedRange(start, length, filter, prefetch);
     }
 
     /**
@@ -813,8 +1438,7 @@ public abstract class AbstractComboBox<TComponent extends AbstractComboBox<TComp
     }
 
     private void initConnector() {
-        getElement().executeJs(
-                "window.Vaadin.Flow.comboBoxConnector.initLazy(this)");
+        ComboBoxClientBatch.initConnector(this);
     }
 
     /**
@@ -0,0 +1,38 @@
+package org.vaadin.addons.componentfactory;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * A callback method for fetching items asynchronously. The callback is
+ * provided with a non-null string filter, offset index and limit, and returns
+ * a future that completes with the items once they have been loaded.
+ * <p>
+ * The callback is called while holding the session lock, but the returned
+ * future can be completed in any thread. The session is not locked while the
+ * items are being loaded.
+ *
+ * @param <T>
+ *            item (bean) type in the combo box
+ * @see AbstractComboBox#setAsyncDataProvider(AsyncFetchItemsCallback,
+ *      com.vaadin.flow.function.SerializableFunction)
+ */
+@FunctionalInterface
+public interface AsyncFetchItemsCallback<T> extends Serializable {
+
+    /**
+     * Returns a future for a stream of items that match the given filter,
+     * limiting the results with given offset and limit.
+     *
+     * @param filter
+     *            a non-null filter string
+     * @param offset
+     *            the first index to fetch
+     * @param limit
+     *            the fetched item count
+     * @return future that completes with the stream of items
+     */
+    CompletableFuture<Stream<T>> fetchItems(String filter, int offset,
+            int limit);
+}
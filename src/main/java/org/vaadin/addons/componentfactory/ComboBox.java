@@ -16,7 +16,6 @@
 package org.vaadin.addons.componentfactory;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -41,11 +40,10 @@ import com.vaadin.flow.data.provider.ArrayUpdater.Update;
 import com.vaadin.flow.data.provider.CallbackDataProvider;
 import com.vaadin.flow.data.provider.CompositeDataGenerator;
 import com.vaadin.flow.data.provider.DataChangeEvent.DataRefreshEvent;
-import com.vaadin.flow.data.provider.DataCommunicator;
 import com.vaadin.flow.data.provider.DataKeyMapper;
 import com.vaadin.flow.data.provider.DataProvider;
+import com.vaadin.flow.data.provider.DataProviderListener;
 import com.vaadin.flow.data.provider.ListDataProvider;
-import com.vaadin.flow.data.provider.Query;
 import com.vaadin.flow.data.renderer.Renderer;
 import com.vaadin.flow.data.renderer.Rendering;
 import com.vaadin.flow.dom.Element;
@@ -56,6 +54,7 @@ import com.vaadin.flow.internal.JsonUtils;
 import com.vaadin.flow.shared.Registration;
 
 import elemental.json.Json;
+import elemental.json.JsonArray;
 import elemental.json.JsonObject;
 import elemental.json.JsonValue;
 
@@ -67,7 +66,9 @@ import elemental.json.JsonValue;
  * ComboBox supports lazy loading. This means that when using large data sets,
  * items are requested from the server one "page" at a time when the user
  * scrolls down the overlay. The number of items in one page is by default 50,
- * and can be changed with {@link #setPageSize(int)}.
+ * and can be changed with {@link #setPageSize(int)}. The data provider is not
+ * queried before the drop-down is opened for the first time, or the user types
+ * a filter.
  * <p>
  * ComboBox can do filtering either in the browser or in the server. When
  * ComboBox has only a relatively small set of items, the filtering will happen
@@ -95,7 +96,24 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
     private static final String PROP_VALUE = "value";
     private static final String PROP_AUTO_OPEN_DISABLED = "autoOpenDisabled";
     private Registration dataProviderListener = null;
+    // Registered while loading data is postponed until the drop-down opens
+    private Registration lazyOpenRegistration;
+    // Whether refreshing all data is postponed while the drop-down is closed
+    private boolean deferredRefresh;
+    private boolean refreshScheduled;
+    private boolean sharedDataProviderListener;
+    // Incremented when the items of the data provider change, so that the
+    // connector can drop the items it has kept for other filters
+    private int dataVersion;
     private boolean shouldForceServerSideFiltering = false;
+    private ComboBoxFilterLocation filterLocation = ComboBoxFilterLocation.AUTO;
+    // 0 to use the page size
+    private int clientSideFilterThreshold;
+    private boolean clientSideFilter;
+    private final ComboBoxRequestGovernor requestGovernor = new ComboBoxRequestGovernor(
+            command -> runBeforeClientResponse(ui -> command.run()),
+            delay -> getElement().callJsFunction("$connector.retryAfter",
+                    delay));
 
     /**
      * A callback method for fetching items. The callback is provided with a
@@ -144,34 +162,57 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
         }
     }
 
+    /**
+     * Collects the changes of one update into a single payload, which is sent
+     * to the client-side connector with one call when the update is committed
+     */
     private final class UpdateQueue implements Update {
-        private transient List<Runnable> queue = new ArrayList<>();
+        private final int size;
+        private final JsonArray changes = Json.createArray();
 
         private UpdateQueue(int size) {
-            enqueue("$connector.updateSize", size);
+            this.size = size;
         }
 
         @Override
         public void set(int start, List<JsonValue> items) {
-            enqueue("$connector.set", start,
-                    items.stream().collect(JsonUtils.asArray()),
-                    ComboBox.this.lastFilter);
+            JsonObject change = Json.createObject();
+            change.put("start", start);
+            // The whole list is sent at once for client-side filtering
+            if (clientSideFilter) {
+                change.put("columns",
+                        ComboBoxDataController.toColumns(items));
+            } else {
+                change.put("items",
+                        items.stream().collect(JsonUtils.asArray()));
+            }
+            changes.set(changes.length(), change);
         }
 
         @Override
         public void clear(int start, int length) {
-            enqueue("$connector.clear", start, length);
+            if (length == 0) {
+                // The data communicator also clears empty ranges
+                return;
+            }
+            JsonObject change = Json.createObject();
+            change.put("start", start);
+            change.put("clear", length);
+            changes.set(changes.length(), change);
         }
 
         @Override
         public void commit(int updateId) {
-            enqueue("$connector.confirm", updateId, ComboBox.this.lastFilter);
-            queue.forEach(Runnable::run);
-            queue.clear();
-        }
-
-        private void enqueue(String name, Serializable... arguments) {
-            queue.add(() -> getElement().callJsFunction(name, arguments));
+            JsonObject update = Json.createObject();
+            update.put("size", size);
+            update.put("changes", changes);
+            update.put("updateId", updateId);
+            update.put("dataVersion", dataVersion);
+            update.put("filter", ComboBox.this.lastFilter == null
+                    ? Json.createNull()
+                    : Json.create(ComboBox.this.lastFilter));
+            ComboBoxClientBatch.beforeConnectorCall(ComboBox.this);
+            getElement().callJsFunction("$connector.applyUpdate", update);
         }
     }
 
@@ -209,7 +250,8 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
     // provided.
     private String lastFilter;
 
-    private DataCommunicator<T> dataCommunicator;
+    private ComboBoxDataCommunicator<T> dataCommunicator;
+    private boolean stableItemKeys;
     private final CompositeDataGenerator<T> dataGenerator = new CompositeDataGenerator<>();
     private Registration dataGeneratorRegistration;
 
@@ -227,13 +269,18 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
 
     private UserProvidedFilter userProvidedFilter = UserProvidedFilter.UNDECIDED;
 
+    // Cached item labels of the default filter, only set when using a list
+    // data provider without a custom item filter
+    private ComboBoxLabelIndex<T> labelIndex;
+
     /**
      * Creates an empty combo box with the defined page size for lazy loading.
      * <p>
      * The default page size is 50.
      * <p>
-     * The page size is also the largest number of items that can support
-     * client-side filtering. If you provide more items than the page size, the
+     * Unless set otherwise with {@link #setClientSideFilterThreshold(int)},
+     * the page size is also the largest number of items that can support
+     * client-side filtering. If you provide more items than that, the
      * component has to fall back to server-side filtering.
      *
      * @param pageSize
@@ -251,6 +298,7 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
         setPageSize(pageSize);
 
         addAttachListener(e -> initConnector());
+        FieldValidationUtil.disableClientValidation(this);
 
         runBeforeClientResponse(ui -> {
             // If user didn't provide any data, initialize with empty data set.
@@ -260,6 +308,25 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
         });
 
         addValueChangeListener(e -> validate());
+        // Free up keys in the key mapper that were only kept because the
+        // items were selected
+        addValueChangeListener(e -> {
+            if (dataCommunicator != null) {
+                dataCommunicator.notifySelectionChanged();
+            }
+        });
+    }
+
+    private boolean isSelectedItem(T item) {
+        T value = getValue();
+        if (value == null || item == null) {
+            return false;
+        }
+        DataProvider<T, ?> dataProvider = getDataProvider();
+        return dataProvider != null
+                ? Objects.equals(dataProvider.getId(item),
+                        dataProvider.getId(value))
+                : Objects.equals(item, value);
     }
 
     /**
@@ -528,11 +595,18 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
             userProvidedFilter = UserProvidedFilter.YES;
         }
 
+        labelIndex = null;
+
         if (dataCommunicator == null) {
-            dataCommunicator = new DataCommunicator<>(dataGenerator,
-                    arrayUpdater, data -> getElement()
+            dataCommunicator = new ComboBoxDataCommunicator<>(
+                    this::isSelectedItem, dataGenerator, arrayUpdater,
+                    data -> getElement()
                             .callJsFunction("$connector.updateData", data),
                     getElement().getNode());
+            dataCommunicator.setStableKeys(stableItemKeys);
+        }
+        if (!isOpened()) {
+            deferDataLoading();
         }
 
         scheduleRender();
@@ -565,27 +639,39 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
 
     private <C> void setupDataProviderListener(
             DataProvider<T, C> dataProvider) {
+        addDataProviderListener(dataProvider);
+        refreshAllData(shouldForceServerSideFiltering);
+    }
+
+    private <C> void addDataProviderListener(DataProvider<T, C> dataProvider) {
         if (dataProviderListener != null) {
             dataProviderListener.remove();
         }
-        dataProviderListener = dataProvider.addDataProviderListener(e -> {
+        DataProviderListener<T> listener = e -> {
+            dataVersion++;
             if (e instanceof DataRefreshEvent) {
                 dataCommunicator.refresh(((DataRefreshEvent<T>) e).getItem());
+            } else if (deferredRefresh) {
+                scheduleRefresh();
             } else {
                 refreshAllData(shouldForceServerSideFiltering);
             }
-        });
-        refreshAllData(shouldForceServerSideFiltering);
+        };
+        dataProviderListener = sharedDataProviderListener
+                ? ComboBoxDataProviderListeners.addListener(dataProvider, this,
+                        listener)
+                : dataProvider.addDataProviderListener(listener);
     }
 
     @Override
     protected void onAttach(AttachEvent attachEvent) {
         super.onAttach(attachEvent);
+        // Data change events are not received while detached
+        dataVersion++;
         DataProvider<T, ?> dataProvider = getDataProvider();
         if (dataProvider != null && dataProviderListener == null) {
             setupDataProviderListener(dataProvider);
         }
-        FieldValidationUtil.disableClientValidation(this);
     }
 
     @Override
@@ -598,9 +684,13 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
     }
 
     private void refreshAllData(boolean forceServerSideFiltering) {
-        if (getDataProvider() != null) {
-            setClientSideFilter(!forceServerSideFiltering && getDataProvider()
-                    .size(new Query<>()) <= getPageSizeDouble());
+        // Deciding on client-side filtering needs a size query, which is done
+        // once the data is loaded
+        if (getDataProvider() != null && !dataCommunicator.isFetchDeferred()) {
+            setClientSideFilter(!forceServerSideFiltering
+                    && ComboBoxDataController.isClientSideFilterApplicable(
+                            filterLocation, getDataProvider(),
+                            getClientSideFilterThreshold()));
         }
 
         reset();
@@ -630,13 +720,16 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
             userProvidedFilter = UserProvidedFilter.NO;
         }
 
+        Objects.requireNonNull(listDataProvider,
+                "List data provider cannot be null");
+
         // Cannot use the case insensitive contains shorthand from
         // ListDataProvider since it wouldn't react to locale changes
-        ItemFilter<T> defaultItemFilter = (item,
-                filterText) -> generateLabel(item).toLowerCase(getLocale())
-                        .contains(filterText.toLowerCase(getLocale()));
+        ComboBoxLabelIndex<T> defaultFilterIndex = new ComboBoxLabelIndex<>(
+                listDataProvider, getItemLabelGenerator(), () -> getLocale());
 
-        setDataProvider(defaultItemFilter, listDataProvider);
+        setDataProvider(listDataProvider, defaultFilterIndex::createFilter);
+        labelIndex = defaultFilterIndex;
     }
 
     /**
@@ -722,6 +815,9 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
         Objects.requireNonNull(itemLabelGenerator,
                 "The item label generator can not be null");
         this.itemLabelGenerator = itemLabelGenerator;
+        if (labelIndex != null) {
+            labelIndex.setLabelGenerator(itemLabelGenerator);
+        }
         reset();
         if (getValue() != null) {
             refreshValue();
@@ -744,8 +840,9 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
      * backend; when the overlay has room to render more new items than the page
      * size, multiple "pages" will be requested at once.
      * <p>
-     * The page size is also the largest number of items that can support
-     * client-side filtering. If you provide more items than the page size, the
+     * Unless set otherwise with {@link #setClientSideFilterThreshold(int)},
+     * the page size is also the largest number of items that can support
+     * client-side filtering. If you provide more items than that, the
      * component has to fall back to server-side filtering.
      * <p>
      * Setting the page size after the ComboBox has been rendered effectively
@@ -770,8 +867,9 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
      * Gets the page size, which is the number of items fetched at a time from
      * the data provider.
      * <p>
-     * The page size is also the largest number of items that can support
-     * client-side filtering. If you provide more items than the page size, the
+     * Unless set otherwise with {@link #setClientSideFilterThreshold(int)},
+     * the page size is also the largest number of items that can support
+     * client-side filtering. If you provide more items than that, the
      * component has to fall back to server-side filtering.
      * <p>
      * The default page size is 50.
@@ -783,6 +881,339 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
         return getElement().getProperty("pageSize", 50);
     }
 
+    /**
+     * Sets where the items are filtered. The default is
+     * {@link ComboBoxFilterLocation#AUTO}.
+     *
+     * @param filterLocation
+     *            where to filter the items, not {@code null}
+     * @see AbstractComboBox#setFilterLocation(ComboBoxFilterLocation)
+     */
+    public void setFilterLocation(ComboBoxFilterLocation filterLocation) {
+        this.filterLocation = Objects.requireNonNull(filterLocation,
+                "Filter location cannot be null");
+        refreshAllData(shouldForceServerSideFiltering);
+    }
+
+    /**
+     * Gets where the items are filtered.
+     *
+     * @return the filter location, not {@code null}
+     * @see #setFilterLocation(ComboBoxFilterLocation)
+     */
+    public ComboBoxFilterLocation getFilterLocation() {
+        return filterLocation;
+    }
+
+    /**
+     * Sets the largest number of items that are filtered in the client-side.
+     * By default, the threshold is the page size.
+     *
+     * @param clientSideFilterThreshold
+     *            the largest number of items to filter in the client-side, or
+     *            0 to use the page size
+     * @see AbstractComboBox#setClientSideFilterThreshold(int)
+     */
+    public void setClientSideFilterThreshold(int clientSideFilterThreshold) {
+        if (clientSideFilterThreshold < 0) {
+            throw new IllegalArgumentException(
+                    "Client-side filter threshold cannot be negative.");
+        }
+        this.clientSideFilterThreshold = clientSideFilterThreshold;
+        getElement().setProperty("_clientSideFilterThreshold",
+                clientSideFilterThreshold);
+        refreshAllData(shouldForceServerSideFiltering);
+    }
+
+    /**
+     * Gets the largest number of items that are filtered in the client-side.
+     *
+     * @return the client-side filter threshold, which is the page size unless
+     *         set explicitly
+     * @see #setClientSideFilterThreshold(int)
+     */
+    public int getClientSideFilterThreshold() {
+        return clientSideFilterThreshold > 0 ? clientSideFilterThreshold
+                : getPageSize();
+    }
+
+    /**
+     * Sets whether items that are filtered in the client-side are filtered in
+     * a Web Worker instead of the main thread of the browser. Filtering in a
+     * worker is disabled by default.
+     *
+     * @param workerFiltering
+     *            {@code true} to filter in a Web Worker, {@code false} to
+     *            filter in the main thread
+     * @see AbstractComboBox#setWorkerFiltering(boolean)
+     */
+    public void setWorkerFiltering(boolean workerFiltering) {
+        ComboBoxConnectorUtil.setWorkerFiltering(this, workerFiltering);
+    }
+
+    /**
+     * Gets whether items that are filtered in the client-side are filtered in
+     * a Web Worker.
+     *
+     * @return {@code true} if filtering in a Web Worker, {@code false}
+     *         otherwise
+     * @see #setWorkerFiltering(boolean)
+     */
+    public boolean isWorkerFiltering() {
+        return ComboBoxConnectorUtil.isWorkerFiltering(this);
+    }
+
+    /**
+     * Sets whether the keys that identify items in the browser are derived
+     * from the identifiers of the items in the data provider. Stable keys are
+     * disabled by default.
+     *
+     * @param stableItemKeys
+     *            {@code true} to derive keys from item identifiers,
+     *            {@code false} to generate keys
+     * @see AbstractComboBox#setStableItemKeys(boolean)
+     */
+    public void setStableItemKeys(boolean stableItemKeys) {
+        this.stableItemKeys = stableItemKeys;
+        // The connector only keeps items of other filters with stable keys
+        getElement().setProperty("_stableKeys", stableItemKeys);
+        if (dataCommunicator != null) {
+            dataCommunicator.setStableKeys(stableItemKeys);
+            refreshValue();
+        }
+    }
+
+    /**
+     * Gets whether the keys that identify items in the browser are derived
+     * from the identifiers of the items in the data provider.
+     *
+     * @return {@code true} if keys are derived from item identifiers,
+     *         {@code false} otherwise
+     * @see #setStableItemKeys(boolean)
+     */
+    public boolean isStableItemKeys() {
+        return stableItemKeys;
+    }
+
+    /**
+     * Sets whether refreshing all items of the data provider is postponed
+     * while the drop-down is closed. Deferred refresh is disabled by default.
+     *
+     * @param deferredRefresh
+     *            {@code true} to postpone refreshing while the drop-down is
+     *            closed, {@code false} to refresh right away
+     * @see AbstractComboBox#setDeferredRefresh(boolean)
+     */
+    public void setDeferredRefresh(boolean deferredRefresh) {
+        this.deferredRefresh = deferredRefresh;
+    }
+
+    /**
+     * Gets whether refreshing all items of the data provider is postponed
+     * while the drop-down is closed.
+     *
+     * @return {@code true} if refreshing is postponed, {@code false} otherwise
+     * @see #setDeferredRefresh(boolean)
+     */
+    public boolean isDeferredRefresh() {
+        return deferredRefresh;
+    }
+
+    /**
+     * Sets whether this combo box receives the data change events of its data
+     * provider through a listener that is shared with all other combo boxes
+     * using the same data provider instance. The shared listener is disabled
+     * by default.
+     *
+     * @param sharedDataProviderListener
+     *            {@code true} to use a listener shared with other combo
+     *            boxes, {@code false} to register a listener for this combo
+     *            box only
+     * @see AbstractComboBox#setSharedDataProviderListener(boolean)
+     */
+    public void setSharedDataProviderListener(
+            boolean sharedDataProviderListener) {
+        if (this.sharedDataProviderListener == sharedDataProviderListener) {
+            return;
+        }
+        this.sharedDataProviderListener = sharedDataProviderListener;
+        if (dataProviderListener != null) {
+            addDataProviderListener(getDataProvider());
+        }
+    }
+
+    /**
+     * Gets whether this combo box receives the data change events of its data
+     * provider through a listener shared with other combo boxes.
+     *
+     * @return {@code true} if using a shared listener, {@code false}
+     *         otherwise
+     * @see #setSharedDataProviderListener(boolean)
+     */
+    public boolean isSharedDataProviderListener() {
+        return sharedDataProviderListener;
+    }
+
+    /**
+     * Sets the maximum number of item ranges per second that the browser can
+     * request. There is no limit by default.
+     *
+     * @param maxRequestsPerSecond
+     *            the maximum number of requests per second, or 0 for no limit
+     * @see AbstractComboBox#setMaxRequestsPerSecond(int)
+     */
+    public void setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+        requestGovernor.setMaxRequestsPerSecond(maxRequestsPerSecond);
+    }
+
+    /**
+     * Gets the maximum number of item ranges per second that the browser can
+     * request.
+     *
+     * @return the maximum number of requests per second, or 0 for no limit
+     * @see #setMaxRequestsPerSecond(int)
+     */
+    public int getMaxRequestsPerSecond() {
+        return requestGovernor.getMaxRequestsPerSecond();
+    }
+
+    /**
+     * Sets the maximum number of items that the browser can request at once.
+     * There is no limit by default.
+     *
+     * @param maxRequestedRangeLength
+     *            the maximum number of items per request, or 0 for no limit
+     * @see AbstractComboBox#setMaxRequestedRangeLength(int)
+     */
+    public void setMaxRequestedRangeLength(int maxRequestedRangeLength) {
+        requestGovernor.setMaxRangeLength(maxRequestedRangeLength);
+    }
+
+    /**
+     * Gets the maximum number of items that the browser can request at once.
+     *
+     * @return the maximum number of items per request, or 0 for no limit
+     * @see #setMaxRequestedRangeLength(int)
+     */
+    public int getMaxRequestedRangeLength() {
+        return requestGovernor.getMaxRangeLength();
+    }
+
+    /**
+     * Gets the governor that decides which item ranges requested by the
+     * browser are fetched.
+     *
+     * @return the request governor of this combo box, not {@code null}
+     * @see AbstractComboBox#getRequestGovernor()
+     */
+    public ComboBoxRequestGovernor getRequestGovernor() {
+        return requestGovernor;
+    }
+
+    /**
+     * Sets how long the browser waits after the user has stopped typing
+     * before requesting the items matching the filter text. The default
+     * debounce time is 500 milliseconds.
+     *
+     * @param debounceTime
+     *            the debounce time in milliseconds, not negative
+     * @see AbstractComboBox#setFilterDebounceTime(int)
+     */
+    public void setFilterDebounceTime(int debounceTime) {
+        ComboBoxConnectorUtil.setFilterDebounceTime(this, debounceTime);
+    }
+
+    /**
+     * Gets how long the browser waits after the user has stopped typing
+     * before requesting the items matching the filter text, when the adaptive
+     * debounce is not enabled.
+     *
+     * @return the debounce time in milliseconds
+     * @see #setFilterDebounceTime(int)
+     */
+    public int getFilterDebounceTime() {
+        return ComboBoxConnectorUtil.getFilterDebounceTime(this);
+    }
+
+    /**
+     * Enables the adaptive filter debounce, which waits for about as long as
+     * the previous requests for items took, limited to the given bounds.
+     *
+     * @param minDebounceTime
+     *            the shortest debounce time in milliseconds, not negative
+     * @param maxDebounceTime
+     *            the longest debounce time in milliseconds, not shorter than
+     *            the shortest time
+     * @see AbstractComboBox#setAdaptiveFilterDebounce(int, int)
+     */
+    public void setAdaptiveFilterDebounce(int minDebounceTime,
+            int maxDebounceTime) {
+        ComboBoxConnectorUtil.setAdaptiveFilterDebounce(this, minDebounceTime,
+                maxDebounceTime);
+    }
+
+    /**
+     * Gets whether the filter debounce time adapts to the measured response
+     * time of the server.
+     *
+     * @return {@code true} if the adaptive debounce is enabled, {@code false}
+     *         if a fixed debounce time is used
+     * @see #setAdaptiveFilterDebounce(int, int)
+     */
+    public boolean isAdaptiveFilterDebounce() {
+        return ComboBoxConnectorUtil.isAdaptiveFilterDebounce(this);
+    }
+
+    /**
+     * Sets the maximum number of pages that the browser requests ahead of
+     * the scrolling direction. The default is 2 pages.
+     *
+     * @param prefetchPageCount
+     *            the maximum number of prefetched pages, or 0 to disable
+     *            prefetching
+     * @see AbstractComboBox#setPrefetchPageCount(int)
+     */
+    public void setPrefetchPageCount(int prefetchPageCount) {
+        ComboBoxConnectorUtil.setPrefetchPageCount(this, prefetchPageCount);
+    }
+
+    /**
+     * Gets the maximum number of pages that the browser requests ahead of
+     * the scrolling direction.
+     *
+     * @return the maximum number of prefetched pages
+     * @see #setPrefetchPageCount(int)
+     */
+    public int getPrefetchPageCount() {
+        return ComboBoxConnectorUtil.getPrefetchPageCount(this);
+    }
+
+    /**
+     * Sets the number of recent filter texts for which the browser keeps the
+     * fetched items, when using stable item keys. The default is 5 filter
+     * texts.
+     *
+     * @param clientFilterCacheSize
+     *            the number of filter texts to keep items for, or 0 to disable
+     *            keeping items
+     * @see AbstractComboBox#setClientFilterCacheSize(int)
+     */
+    public void setClientFilterCacheSize(int clientFilterCacheSize) {
+        ComboBoxConnectorUtil.setClientFilterCacheSize(this,
+                clientFilterCacheSize);
+    }
+
+    /**
+     * Gets the number of recent filter texts for which the browser keeps the
+     * fetched items.
+     *
+     * @return the number of filter texts to keep items for
+     * @see #setClientFilterCacheSize(int)
+     */
+    public int getClientFilterCacheSize() {
+        return ComboBoxConnectorUtil.getClientFilterCacheSize(this);
+    }
+
     @Override
     public void setOpened(boolean opened) {
         super.setOpened(opened);
@@ -1125,8 +1556,73 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
         dataCommunicator.confirmUpdate(id);
     }
 
+    /**
+     * Postpones all fetch and size queries until the drop-down is opened or
+     * the client requests items, so that combo boxes that the user does not
+     * interact with do not query the data provider.
+     */
+    private void deferDataLoading() {
+        dataCommunicator.setFetchDeferred(true);
+        if (lazyOpenRegistration == null) {
+            lazyOpenRegistration = getElement().addPropertyChangeListener(
+                    "opened", event -> {
+                        if (Boolean.TRUE.equals(event.getValue())) {
+                            loadDeferredData();
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Refreshes all data once before the response, if the drop-down is
+     * opened. Otherwise, loading the data is deferred until the drop-down
+     * opens.
+     */
+    private void scheduleRefresh() {
+        if (!isOpened()) {
+            dataCommunicator.setFetchDeferred(true);
+        }
+        if (refreshScheduled) {
+            return;
+        }
+        refreshScheduled = true;
+        runBeforeClientResponse(ui -> {
+            refreshScheduled = false;
+            if (isOpened()) {
+                dataCommunicator.setFetchDeferred(false);
+                refreshAllData(shouldForceServerSideFiltering);
+            } else {
+                deferDataLoading();
+            }
+        });
+    }
+
+    private void loadDeferredData() {
+        if (lazyOpenRegistration != null) {
+            lazyOpenRegistration.remove();
+            lazyOpenRegistration = null;
+        }
+        if (dataCommunicator.isFetchDeferred()) {
+            dataCommunicator.setFetchDeferred(false);
+            refreshAllData(shouldForceServerSideFiltering);
+        }
+    }
+
     @ClientCallable
-    private void setRequestedRange(int start, int length, String filter) {
+    private void setRequestedRange(int start, int length, String filter,
+            int prefetch) {
+        // Items can be requested without opening, e.g. when typing a filter
+        // with auto open disabled
+        loadDeferredData();
+        // All items filtered in the client-side are sent at once
+        ComboBoxRequestGovernor.Request request = requestGovernor.onRequest(
+                start, length, prefetch, filter,
+                clientSideFilter ? getClientSideFilterThreshold() : 0);
+        if (request == null) {
+            return;
+        }
+        start = request.getStart();
+        length = request.getLength();
         // If the filter is null, which indicates that the combo box was closed
         // before, then reset the data communicator to force sending an update
         // to the client connector. This covers an edge-case when using an empty
@@ -1142,8 +1638,9 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
         }
         dataCommunicator.setRequestedRange(start, length);
         filterSlot.accept(filter);
-        // Send (possibly updated) key for the selected value
-        if (getValue() != null) {
+        // Send (possibly updated) key for the selected value. Stable keys do
+        // not change.
+        if (getValue() != null && !stableItemKeys) {
             String updatedKey = getKeyMapper().key(getValue());
             getElement().executeJs(
                     "if (this.selectedItem) { this.selectedItem.key = $0; this.value = $0; } ",
@@ -1153,6 +1650,7 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
 
     @ClientCallable
     private void resetDataCommunicator() {
+        requestGovernor.reset();
         dataCommunicator.reset();
     }
 
@@ -1162,8 +1660,7 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
     }
 
     private void initConnector() {
-        getElement().executeJs(
-                "window.Vaadin.Flow.comboBoxConnector.initLazy(this)");
+        ComboBoxClientBatch.initConnector(this);
     }
 
     private DataKeyMapper<T> getKeyMapper() {
@@ -1171,11 +1668,13 @@ public class ComboBox<T> extends ComboBoxBase<ComboBox<T>, T>
     }
 
     private void setClientSideFilter(boolean clientSideFilter) {
+        this.clientSideFilter = clientSideFilter;
         getElement().setProperty("_clientSideFilter", clientSideFilter);
     }
 
     private void reset() {
         lastFilter = null;
+        requestGovernor.reset();
         if (dataCommunicator != null) {
             dataCommunicator.setRequestedRange(0, 0);
             dataCommunicator.reset();
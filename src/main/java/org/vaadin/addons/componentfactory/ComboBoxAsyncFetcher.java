@@ -0,0 +1,293 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.function.SerializableSupplier;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Internal fetch handler that loads the items requested by the client-side
+ * connector in the background, without holding the session lock, and serves
+ * the fetch and size queries of the data communicator from the loaded result
+ * once it has been applied with {@link UI#access}.
+ * <p>
+ * Queries that are not covered by the loaded result are first offered to the
+ * miss handler, which can start loading the requested range in the
+ * background. Such queries are then answered with no items, and the data
+ * communicator needs to be reset once the range has been loaded, see
+ * {@link #takeAnsweredPending()}. Queries that the miss handler declines are
+ * passed to the delegate handler. Loading is cancelled with
+ * {@link Future#cancel(boolean)} when a newer range is requested, or the
+ * loaded data is cleared, so that no more work is done for ranges or filters
+ * that are not needed anymore.
+ * <p>
+ * When loading fails, the request is answered with no items, so that the
+ * client-side connector does not keep waiting, and the failure is reported to
+ * the error handler of the session.
+ *
+ * @param <TItem>
+ *            Type of individual items that are selectable in the combo box
+ */
+class ComboBoxAsyncFetcher<TItem>
+        implements ComboBoxDataCommunicator.FetchHandler<TItem> {
+
+    /**
+     * Loads a range of items, and the item count, for a filter text
+     *
+     * @param <TItem>
+     *            Type of individual items that are selectable in the combo box
+     */
+    @FunctionalInterface
+    interface Loader<TItem> extends Serializable {
+        /**
+         * Starts loading the items
+         *
+         * @param filter
+         *            the filter text, not {@code null}
+         * @param start
+         *            the index of the first item
+         * @param length
+         *            the number of items
+         * @param knownSize
+         *            the item count for the filter if it is already known, or
+         *            {@code null} if it needs to be loaded too
+         * @return future that completes with the loaded items, and that
+         *         stops loading when cancelled
+         */
+        CompletableFuture<Result<TItem>> load(String filter, int start,
+                int length, Integer knownSize);
+    }
+
+    /**
+     * Handles a query that is not covered by the loaded result
+     */
+    @FunctionalInterface
+    interface MissHandler extends Serializable {
+        /**
+         * Starts loading the items of the current query in the background, if
+         * applicable
+         *
+         * @return {@code true} if the query should be answered with no items
+         *         while loading, {@code false} to pass it to the delegate
+         *         handler
+         */
+        boolean onMiss();
+    }
+
+    /**
+     * Items and item count loaded in the background
+     */
+    static final class Result<TItem> {
+        private final List<TItem> items;
+        private final int size;
+
+        Result(List<TItem> items, int size) {
+            this.items = Objects.requireNonNull(items);
+            this.size = size;
+        }
+    }
+
+    private final ComboBoxDataCommunicator.FetchHandler<TItem> delegate;
+    private final SerializableSupplier<String> filterSupplier;
+    private final MissHandler missHandler;
+
+    private Request pendingRequest;
+    private transient Future<?> pendingFuture;
+    private Request resultRequest;
+    private transient Result<TItem> result;
+    // Whether the result is the empty answer to a failed request
+    private boolean resultFailed;
+    // Whether a query has been answered with no items while loading
+    private boolean answeredPending;
+
+    /**
+     * Creates a new fetcher
+     *
+     * @param delegate
+     *            the handler for queries that are not covered by the loaded
+     *            result, and that the miss handler declines
+     * @param filterSupplier
+     *            supplier for the filter text of the current query
+     * @param missHandler
+     *            the handler that starts loading queries that are not covered
+     *            by the loaded result
+     */
+    ComboBoxAsyncFetcher(ComboBoxDataCommunicator.FetchHandler<TItem> delegate,
+            SerializableSupplier<String> filterSupplier,
+            MissHandler missHandler) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.filterSupplier = Objects.requireNonNull(filterSupplier);
+        this.missHandler = Objects.requireNonNull(missHandler);
+    }
+
+    /**
+     * Whether the loaded result contains the requested range. The empty
+     * answer to a failed request does not contain any range, so that the
+     * range is loaded again when requested again.
+     */
+    boolean hasResult(String filter, int start, int length) {
+        return length == 0 || (result != null && !resultFailed
+                && resultRequest.covers(filter, start, length));
+    }
+
+    /**
+     * Gets whether a query has been answered with no items since the last
+     * call, in which case the data communicator needs to be reset to send the
+     * loaded items, and clears the flag
+     */
+    boolean takeAnsweredPending() {
+        boolean answered = answeredPending;
+        answeredPending = false;
+        return answered;
+    }
+
+    /**
+     * Starts loading the requested range in the background, unless it is
+     * already being loaded. When the result is available, it is stored and the
+     * callback is run, both in the access executor, which runs them while
+     * holding the session lock of the UI. Results of earlier requests are
+     * ignored when a newer request has been made, and loading them is
+     * cancelled.
+     */
+    void load(Executor access, String filter, int start, int length,
+            Loader<TItem> loader, Runnable onLoaded) {
+        Request request = new Request(filter, start, length);
+        if (request.equals(pendingRequest)) {
+            return;
+        }
+        cancelPending();
+        pendingRequest = request;
+
+        Integer knownSize = result != null
+                && resultRequest.filter.equals(filter) ? result.size : null;
+        CompletableFuture<Result<TItem>> future = loader.load(filter, start,
+                length, knownSize);
+        pendingFuture = future;
+        future.whenComplete((loaded, error) -> {
+            if (future.isCancelled()) {
+                return;
+            }
+            access.execute(() -> apply(request, loaded, error, onLoaded));
+        });
+    }
+
+    private void apply(Request request, Result<TItem> loaded, Throwable error,
+            Runnable onLoaded) {
+        if (!request.equals(pendingRequest)) {
+            // Superseded by a newer request, or cleared
+            return;
+        }
+        pendingRequest = null;
+        pendingFuture = null;
+        resultRequest = request;
+        resultFailed = error != null;
+        result = resultFailed ? new Result<>(Collections.emptyList(), 0)
+                : loaded;
+        onLoaded.run();
+        if (resultFailed) {
+            // Reported to the error handler of the session by UI.access,
+            // after the empty answer has been queued
+            Throwable cause = error instanceof CompletionException
+                    && error.getCause() != null ? error.getCause() : error;
+            throw new IllegalStateException(
+                    "Fetching items in the background failed", cause);
+        }
+    }
+
+    /**
+     * Cancels loading the pending request, if any
+     */
+    void cancelPending() {
+        if (pendingFuture != null) {
+            pendingFuture.cancel(true);
+            pendingFuture = null;
+        }
+        pendingRequest = null;
+    }
+
+    /**
+     * Drops the loaded result and cancels pending requests
+     */
+    void clear() {
+        cancelPending();
+        resultRequest = null;
+        result = null;
+        resultFailed = false;
+    }
+
+    @Override
+    public Stream<TItem> fetch(int offset, int limit) {
+        if (result == null || !resultRequest.covers(filterSupplier.get(),
+                offset, limit)) {
+            if (missHandler.onMiss()) {
+                answeredPending = true;
+                return Stream.empty();
+            }
+            return delegate.fetch(offset, limit);
+        }
+        int from = Math.min(offset - resultRequest.start, result.items.size());
+        int to = Math.min(from + limit, result.items.size());
+        return result.items.subList(from, to).stream();
+    }
+
+    @Override
+    public int size() {
+        if (result == null
+                || !resultRequest.filter.equals(filterSupplier.get())) {
+            if (missHandler.onMiss()) {
+                answeredPending = true;
+                return 0;
+            }
+            return delegate.size();
+        }
+        return result.size;
+    }
+
+    /**
+     * Range of items requested for a filter text
+     */
+    private static final class Request implements Serializable {
+        private final String filter;
+        private final int start;
+        private final int length;
+
+        private Request(String filter, int start, int length) {
+            this.filter = filter;
+            this.start = start;
+            this.length = length;
+        }
+
+        private boolean covers(String otherFilter, int otherStart,
+                int otherLength) {
+            return filter.equals(otherFilter) && otherStart >= start
+                    && (long) otherStart + otherLength <= (long) start
+                            + length;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Request)) {
+                return false;
+            }
+            Request other = (Request) obj;
+            return start == other.start && length == other.length
+                    && filter.equals(other.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filter, start, length);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.ComponentUtil;
+import com.vaadin.flow.component.UI;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonValue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gathers the client-side setup of the combo boxes of a UI, so that it is sent
+ * as a single JavaScript invocation per response instead of one or more per
+ * component.
+ * <p>
+ * The setup consists of initializing the connector and assigning i18n
+ * settings. Equal i18n settings are sent once per response, and shared by all
+ * combo boxes using them. The batch is stored
+ * in the UI with {@link ComponentUtil#setData(Component, Class, Object)}, and
+ * sent before the client response, after the state of the components has been
+ * updated. Invocations of the connector that are made by the combo boxes
+ * before the response are queued after the batch, as they are registered
+ * after it. Data updates check this with {@link #beforeConnectorCall}, which
+ * sends the batch first if it still initializes the connector.
+ */
+final class ComboBoxClientBatch implements Serializable {
+
+    private final Map<Component, Setup> setups = new LinkedHashMap<>();
+    private boolean scheduled;
+
+    private ComboBoxClientBatch() {
+    }
+
+    /**
+     * Initializes the client-side connector of a combo box
+     */
+    static void initConnector(Component comboBox) {
+        comboBox.getElement().getNode().runWhenAttached(
+                ui -> get(ui).getSetup(comboBox).connector = true);
+    }
+
+    /**
+     * Merges i18n settings into the current settings of a combo box. Settings
+     * merged before the response is sent are merged into one object, like
+     * the connector merges them into the settings of the web component.
+     */
+    static void setI18n(Component comboBox, JsonObject i18n) {
+        comboBox.getElement().getNode().runWhenAttached(ui -> {
+            Setup setup = get(ui).getSetup(comboBox);
+            if (setup.i18n == null) {
+                setup.i18n = Json.createObject();
+            }
+            for (String key : i18n.keys()) {
+                setup.i18n.put(key, (JsonValue) i18n.get(key));
+            }
+        });
+    }
+
+    /**
+     * Sends the pending setup of the UI right away if it initializes the
+     * connector of a combo box, so that a connector function that is called
+     * before the response is sent runs after the connector has been
+     * initialized, regardless of the order of the before client response
+     * tasks
+     */
+    static void beforeConnectorCall(Component comboBox) {
+        UI ui = comboBox.getUI().orElse(null);
+        ComboBoxClientBatch batch = ui == null ? null
+                : ComponentUtil.getData(ui, ComboBoxClientBatch.class);
+        if (batch != null) {
+            Setup setup = batch.setups.get(comboBox);
+            if (setup != null && setup.connector) {
+                batch.send(ui);
+            }
+        }
+    }
+
+    private static ComboBoxClientBatch get(UI ui) {
+        ComboBoxClientBatch batch = ComponentUtil.getData(ui,
+                ComboBoxClientBatch.class);
+        if (batch == null) {
+            batch = new ComboBoxClientBatch();
+            ComponentUtil.setData(ui, ComboBoxClientBatch.class, batch);
+        }
+        if (!batch.scheduled) {
+            batch.scheduled = true;
+            ComboBoxClientBatch scheduledBatch = batch;
+            ui.beforeClientResponse(ui, context -> {
+                scheduledBatch.scheduled = false;
+                scheduledBatch.send(ui);
+            });
+        }
+        return batch;
+    }
+
+    private Setup getSetup(Component comboBox) {
+        return setups.computeIfAbsent(comboBox, key -> new Setup());
+    }
+
+    private void send(UI ui) {
+        JsonArray configs = Json.createArray();
+        JsonArray i18ns = Json.createArray();
+        Map<String, Integer> i18nIndexes = new HashMap<>();
+        List<Serializable> elements = new ArrayList<>();
+
+        setups.forEach((comboBox, setup) -> {
+            // Elements that are not attached to the UI would cancel the
+            // whole invocation
+            if (comboBox.getUI().orElse(null) != ui) {
+                return;
+            }
+            JsonObject config = Json.createObject();
+            if (setup.connector) {
+                config.put("connector", true);
+            }
+            if (setup.i18n != null) {
+                int index = i18nIndexes.computeIfAbsent(setup.i18n.toJson(),
+                        json -> {
+                            i18ns.set(i18ns.length(), setup.i18n);
+                            return i18ns.length() - 1;
+                        });
+                config.put("i18n", index);
+            }
+            configs.set(configs.length(), config);
+            elements.add(comboBox.getElement());
+        });
+        setups.clear();
+
+        if (elements.isEmpty()) {
+            return;
+        }
+        StringBuilder expression = new StringBuilder(
+                "window.Vaadin.Flow.comboBoxConnector.initBatch($0, $1, [");
+        List<Serializable> parameters = new ArrayList<>();
+        parameters.add(configs);
+        parameters.add(i18ns);
+        for (int i = 0; i < elements.size(); i++) {
+            expression.append(i == 0 ? "" : ", ").append('$').append(i + 2);
+            parameters.add(elements.get(i));
+        }
+        expression.append("])");
+        ui.getPage().executeJs(expression.toString(),
+                parameters.toArray(new Serializable[0]));
+    }
+
+    /**
+     * Client-side setup of one combo box
+     */
+    private static final class Setup implements Serializable {
+        private boolean connector;
+        private JsonObject i18n;
+    }
+}
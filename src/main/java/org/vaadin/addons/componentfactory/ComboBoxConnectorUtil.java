@@ -0,0 +1,86 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.component.Component;
+
+/**
+ * Utility class for the element properties that configure the client-side
+ * connector, shared by {@link AbstractComboBox} and the legacy
+ * {@link ComboBox}.
+ */
+final class ComboBoxConnectorUtil {
+
+    private ComboBoxConnectorUtil() {
+        // utility class should not be instantiated
+    }
+
+    static void setFilterDebounceTime(Component component, int debounceTime) {
+        if (debounceTime < 0) {
+            throw new IllegalArgumentException(
+                    "Filter debounce time cannot be negative.");
+        }
+        component.getElement().setProperty("_filterDebounceTime",
+                debounceTime);
+        component.getElement().setProperty("_adaptiveFilterDebounce", false);
+    }
+
+    static int getFilterDebounceTime(Component component) {
+        return component.getElement().getProperty("_filterDebounceTime", 500);
+    }
+
+    static void setAdaptiveFilterDebounce(Component component,
+            int minDebounceTime, int maxDebounceTime) {
+        if (minDebounceTime < 0 || maxDebounceTime < minDebounceTime) {
+            throw new IllegalArgumentException(
+                    "Filter debounce time bounds should be non-negative and "
+                            + "the minimum should not exceed the maximum.");
+        }
+        component.getElement().setProperty("_filterDebounceMin",
+                minDebounceTime);
+        component.getElement().setProperty("_filterDebounceMax",
+                maxDebounceTime);
+        component.getElement().setProperty("_adaptiveFilterDebounce", true);
+    }
+
+    static boolean isAdaptiveFilterDebounce(Component component) {
+        return component.getElement().getProperty("_adaptiveFilterDebounce",
+                false);
+    }
+
+    static void setPrefetchPageCount(Component component,
+            int prefetchPageCount) {
+        if (prefetchPageCount < 0) {
+            throw new IllegalArgumentException(
+                    "Prefetch page count cannot be negative.");
+        }
+        component.getElement().setProperty("_prefetchPages",
+                prefetchPageCount);
+    }
+
+    static int getPrefetchPageCount(Component component) {
+        return component.getElement().getProperty("_prefetchPages", 2);
+    }
+
+    static void setClientFilterCacheSize(Component component,
+            int clientFilterCacheSize) {
+        if (clientFilterCacheSize < 0) {
+            throw new IllegalArgumentException(
+                    "Client filter cache size cannot be negative.");
+        }
+        component.getElement().setProperty("_filterCacheSize",
+                clientFilterCacheSize);
+    }
+
+    static int getClientFilterCacheSize(Component component) {
+        return component.getElement().getProperty("_filterCacheSize", 5);
+    }
+
+    static void setWorkerFiltering(Component component,
+            boolean workerFiltering) {
+        component.getElement().setProperty("_filterInWorker",
+                workerFiltering);
+    }
+
+    static boolean isWorkerFiltering(Component component) {
+        return component.getElement().getProperty("_filterInWorker", false);
+    }
+}
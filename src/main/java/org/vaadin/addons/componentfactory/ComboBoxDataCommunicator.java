@@ -3,16 +3,24 @@ package org.vaadin.addons.componentfactory;
 import com.vaadin.flow.data.provider.ArrayUpdater;
 import com.vaadin.flow.data.provider.DataCommunicator;
 import com.vaadin.flow.data.provider.DataGenerator;
+import com.vaadin.flow.data.provider.DataKeyMapper;
+import com.vaadin.flow.data.provider.DataProvider;
 import com.vaadin.flow.data.provider.KeyMapper;
 import com.vaadin.flow.function.SerializableConsumer;
+import com.vaadin.flow.function.SerializablePredicate;
 import com.vaadin.flow.internal.StateNode;
 import elemental.json.JsonArray;
+import elemental.json.JsonValue;
 
+import java.io.Serializable;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
- * Customized data communicator that uses a custom key mapper for preserving
+ * Customized data communicator that uses a compact key mapper for preserving
  * keys of selected items when using lazy-loading.
  *
  * @param <TItem>
@@ -26,7 +34,11 @@ public class ComboBoxDataCommunicator<TItem> extends DataCommunicator<TItem> {
      *
      * @param <TItem>
      *            The type of the item selectable in the combo box
+     * @deprecated the data communicator uses {@link ComboBoxKeyMapper}, which
+     *             also preserves the keys of selected items; this class is
+     *             kept for subclasses that still set it
      */
+    @Deprecated
     protected static class SelectionPreservingKeyMapper<TItem>
             extends KeyMapper<TItem> {
 
@@ -59,25 +71,278 @@ public class ComboBoxDataCommunicator<TItem> extends DataCommunicator<TItem> {
 
         public void purgeItems() {
             // Try purging items that we were not able to remove before
-            HashSet<TItem> itemsToRemove = new HashSet<>(itemsMarkedForRemoval);
-            itemsToRemove.forEach(item -> {
+            Iterator<TItem> iterator = itemsMarkedForRemoval.iterator();
+            while (iterator.hasNext()) {
+                TItem item = iterator.next();
                 if (!comboBox.isSelected(item)) {
                     super.remove(item);
-                    itemsMarkedForRemoval.remove(item);
+                    iterator.remove();
                 }
-            });
+            }
+        }
+    }
+
+    /**
+     * Handler that can serve the fetch and size queries of the data
+     * communicator instead of the data provider, for example from an index.
+     * The handler can delegate to the data provider using
+     * {@link ComboBoxDataCommunicator#fetchFromDataProvider(int, int)} and
+     * {@link ComboBoxDataCommunicator#getSizeFromDataProvider()}.
+     *
+     * @param <TItem>
+     *            The type of the item selectable in the combo box
+     */
+    interface FetchHandler<TItem> extends Serializable {
+        Stream<TItem> fetch(int offset, int limit);
+
+        int size();
+    }
+
+    /**
+     * Array updater that does not send updates while fetching is deferred.
+     * Such updates are made by flushes that were requested before fetching
+     * was deferred, or by confirmations of earlier updates, and would send
+     * the empty results of the deferred queries to the client.
+     */
+    private static class DeferrableArrayUpdater implements ArrayUpdater {
+
+        private final ArrayUpdater arrayUpdater;
+        private ComboBoxDataCommunicator<?> dataCommunicator;
+
+        private DeferrableArrayUpdater(ArrayUpdater arrayUpdater) {
+            this.arrayUpdater = arrayUpdater;
+        }
+
+        @Override
+        public Update startUpdate(int sizeChange) {
+            if (!dataCommunicator.fetchDeferred) {
+                return arrayUpdater.startUpdate(sizeChange);
+            }
+            return new Update() {
+                @Override
+                public void set(int start, List<JsonValue> items) {
+                    // NO-OP
+                }
+
+                @Override
+                public void clear(int start, int length) {
+                    // NO-OP
+                }
+
+                @Override
+                public void commit(int updateId) {
+                    dataCommunicator.discardUpdate(updateId);
+                }
+            };
+        }
+
+        @Override
+        public void initialize() {
+            arrayUpdater.initialize();
         }
     }
 
+    private final SerializablePredicate<TItem> isSelected;
+
+    private FetchHandler<TItem> fetchHandler;
+
+    // Whether fetch and size queries are postponed until the data is needed
+    private boolean fetchDeferred;
+    private boolean resetPending;
+    // Updates that were not sent because fetching was deferred
+    private final Set<Integer> discardedUpdates = new HashSet<>();
+
+    // Filter that is currently applied to the data provider
+    private Object currentFilter;
+
     public ComboBoxDataCommunicator(AbstractComboBox<?, TItem, ?> comboBox,
             DataGenerator<TItem> dataGenerator, ArrayUpdater arrayUpdater,
             SerializableConsumer<JsonArray> dataUpdater, StateNode stateNode) {
+        this(comboBox::isSelected, dataGenerator, arrayUpdater, dataUpdater,
+                stateNode);
+    }
+
+    /**
+     * Creates a data communicator for a combo box that is not an
+     * {@link AbstractComboBox}
+     *
+     * @param isSelected
+     *            tells whether an item is currently selected in the combo box
+     */
+    ComboBoxDataCommunicator(SerializablePredicate<TItem> isSelected,
+            DataGenerator<TItem> dataGenerator, ArrayUpdater arrayUpdater,
+            SerializableConsumer<JsonArray> dataUpdater, StateNode stateNode) {
+        this(isSelected, dataGenerator,
+                new DeferrableArrayUpdater(arrayUpdater), dataUpdater,
+                stateNode);
+    }
+
+    private ComboBoxDataCommunicator(SerializablePredicate<TItem> isSelected,
+            DataGenerator<TItem> dataGenerator,
+            DeferrableArrayUpdater arrayUpdater,
+            SerializableConsumer<JsonArray> dataUpdater, StateNode stateNode) {
         super(dataGenerator, arrayUpdater, dataUpdater, stateNode);
+        arrayUpdater.dataCommunicator = this;
+        this.isSelected = isSelected;
+
+        setKeyMapper(new ComboBoxKeyMapper<>(isSelected));
+    }
 
-        setKeyMapper(new SelectionPreservingKeyMapper<>(comboBox));
+    /**
+     * Sets whether the keys of items are derived from their identifiers in
+     * the data provider, so that they stay the same across filters and
+     * resets, and resends the items with the new keys
+     */
+    void setStableKeys(boolean stableKeys) {
+        if (stableKeys == isStableKeys()) {
+            return;
+        }
+        DataKeyMapper<TItem> keyMapper = stableKeys
+                ? new ComboBoxStableKeyMapper<>(isSelected)
+                : new ComboBoxKeyMapper<>(isSelected);
+        setKeyMapper(keyMapper);
+        DataProvider<TItem, ?> dataProvider = getDataProvider();
+        if (dataProvider != null) {
+            keyMapper.setIdentifierGetter(dataProvider::getId);
+            reset();
+        }
+    }
+
+    /**
+     * Gets whether the keys of items are derived from their identifiers in
+     * the data provider
+     */
+    boolean isStableKeys() {
+        return getKeyMapper() instanceof ComboBoxStableKeyMapper;
     }
 
     public void notifySelectionChanged() {
-        ((SelectionPreservingKeyMapper<TItem>) getKeyMapper()).purgeItems();
+        DataKeyMapper<TItem> keyMapper = getKeyMapper();
+        if (keyMapper instanceof ComboBoxKeyMapper) {
+            ((ComboBoxKeyMapper<TItem>) keyMapper).purge();
+        } else if (keyMapper instanceof ComboBoxStableKeyMapper) {
+            ((ComboBoxStableKeyMapper<TItem>) keyMapper).purge();
+        } else if (keyMapper instanceof SelectionPreservingKeyMapper) {
+            ((SelectionPreservingKeyMapper<TItem>) keyMapper).purgeItems();
+        }
+    }
+
+    @Override
+    public <F> SerializableConsumer<F> setDataProvider(
+            DataProvider<TItem, F> dataProvider, F initialFilter) {
+        currentFilter = initialFilter;
+        SerializableConsumer<F> filterSlot = super.setDataProvider(
+                dataProvider, initialFilter);
+        return filter -> {
+            currentFilter = filter;
+            filterSlot.accept(filter);
+        };
+    }
+
+    @Override
+    public void reset() {
+        if (fetchDeferred) {
+            resetPending = true;
+            return;
+        }
+        super.reset();
+    }
+
+    @Override
+    public void setRequestedRange(int start, int length) {
+        if (fetchDeferred) {
+            // Nothing is sent before fetching is resumed
+            return;
+        }
+        super.setRequestedRange(start, length);
+    }
+
+    @Override
+    protected Stream<TItem> fetchFromProvider(int offset, int limit) {
+        if (fetchDeferred) {
+            return Stream.empty();
+        }
+        if (fetchHandler != null) {
+            return fetchHandler.fetch(offset, limit);
+        }
+        return super.fetchFromProvider(offset, limit);
+    }
+
+    @Override
+    protected int getDataProviderSize() {
+        if (fetchDeferred) {
+            return 0;
+        }
+        if (fetchHandler != null) {
+            return fetchHandler.size();
+        }
+        return super.getDataProviderSize();
+    }
+
+    /**
+     * Sets the handler for fetch and size queries, or {@code null} to always
+     * query the data provider
+     */
+    void setFetchHandler(FetchHandler<TItem> fetchHandler) {
+        this.fetchHandler = fetchHandler;
+    }
+
+    /**
+     * Sets whether fetch and size queries are postponed. While deferred, the
+     * data provider is not queried, resets are only remembered and no updates
+     * are sent to the client. A pending reset is performed when fetching is
+     * resumed.
+     */
+    void setFetchDeferred(boolean fetchDeferred) {
+        this.fetchDeferred = fetchDeferred;
+        if (fetchDeferred) {
+            return;
+        }
+        // Releases the keys of the items that were passivated by the
+        // discarded updates, as if the client had confirmed them
+        discardedUpdates.forEach(this::confirmUpdate);
+        discardedUpdates.clear();
+        if (resetPending) {
+            resetPending = false;
+            super.reset();
+        }
+    }
+
+    /**
+     * Gets whether fetch and size queries are postponed
+     */
+    boolean isFetchDeferred() {
+        return fetchDeferred;
+    }
+
+    /**
+     * Remembers an update that was not sent to the client. The client still
+     * has the items of the previous updates, so everything is sent again once
+     * fetching is resumed.
+     */
+    private void discardUpdate(int updateId) {
+        discardedUpdates.add(updateId);
+        resetPending = true;
+    }
+
+    /**
+     * Gets the filter that is currently applied to the data provider
+     */
+    Object getCurrentFilter() {
+        return currentFilter;
+    }
+
+    /**
+     * Fetches items from the data provider, bypassing the fetch handler
+     */
+    Stream<TItem> fetchFromDataProvider(int offset, int limit) {
+        return super.fetchFromProvider(offset, limit);
+    }
+
+    /**
+     * Gets the size of the data provider, bypassing the fetch handler
+     */
+    int getSizeFromDataProvider() {
+        return super.getDataProviderSize();
     }
 }
@@ -1,13 +1,16 @@
 package org.vaadin.addons.componentfactory;
 
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.data.provider.ArrayUpdater;
 import com.vaadin.flow.data.provider.CallbackDataProvider;
 import com.vaadin.flow.data.provider.CompositeDataGenerator;
 import com.vaadin.flow.data.provider.DataChangeEvent;
 import com.vaadin.flow.data.provider.DataCommunicator;
 import com.vaadin.flow.data.provider.DataProvider;
+import com.vaadin.flow.data.provider.DataProviderListener;
 import com.vaadin.flow.data.provider.ListDataProvider;
 import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.data.provider.QuerySortOrder;
 import com.vaadin.flow.dom.PropertyChangeEvent;
 import com.vaadin.flow.function.SerializableComparator;
 import com.vaadin.flow.function.SerializableConsumer;
@@ -16,13 +19,25 @@ import com.vaadin.flow.function.SerializablePredicate;
 import com.vaadin.flow.function.SerializableSupplier;
 import com.vaadin.flow.internal.JsonUtils;
 import com.vaadin.flow.shared.Registration;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
 import elemental.json.JsonValue;
 
-import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Internal class that encapsulates the data communication logic with the web
@@ -36,46 +51,69 @@ class ComboBoxDataController<TItem> {
         UNDECIDED, YES, NO
     }
 
+    /**
+     * Collects the changes of one update into a single payload, which is sent
+     * to the client-side connector with one call when the update is committed
+     */
     private final class UpdateQueue implements ArrayUpdater.Update {
-        private final transient List<Runnable> queue = new ArrayList<>();
+        private final int size;
+        private final JsonArray changes = Json.createArray();
 
         private UpdateQueue(int size) {
-            enqueue("$connector.updateSize", size);
-
-            // Triggers a size update on the client side.
-            // This is exclusively needed for supporting immediate update of the
-            // dropdown scroller size when the
-            // LazyDataView::setItemCountEstimate() has been called, i.e. as
-            // soon as the user opens the dropdown. Otherwise, the scroller
-            // size update would be triggered only after a manual scrolling to
-            // the next page, which is a bad UX.
-            ComboBoxDataController.this.comboBox.getElement()
-                    .setProperty("size", size);
+            this.size = size;
         }
 
         @Override
         public void set(int start, List<JsonValue> items) {
-            enqueue("$connector.set", start,
-                    items.stream().collect(JsonUtils.asArray()),
-                    ComboBoxDataController.this.lastFilter);
+            JsonObject change = Json.createObject();
+            change.put("start", start);
+            // The whole list is sent at once for client-side filtering
+            if (compactDataFormat || clientSideFilter) {
+                change.put("columns", toColumns(items));
+            } else {
+                change.put("items",
+                        items.stream().collect(JsonUtils.asArray()));
+            }
+            changes.set(changes.length(), change);
         }
 
         @Override
         public void clear(int start, int length) {
-            enqueue("$connector.clear", start, length);
+            if (length == 0) {
+                // The data communicator also clears empty ranges
+                return;
+            }
+            JsonObject change = Json.createObject();
+            change.put("start", start);
+            change.put("clear", length);
+            changes.set(changes.length(), change);
         }
 
         @Override
         public void commit(int updateId) {
-            enqueue("$connector.confirm", updateId,
-                    ComboBoxDataController.this.lastFilter);
-            queue.forEach(Runnable::run);
-            queue.clear();
-        }
-
-        private void enqueue(String name, Serializable... arguments) {
-            queue.add(() -> ComboBoxDataController.this.comboBox.getElement()
-                    .callJsFunction(name, arguments));
+            JsonObject update = Json.createObject();
+            update.put("size", size);
+            // Updates the scroller size even when filtering in the
+            // client-side, whenever the size has changed. This is exclusively
+            // needed for supporting immediate update of the dropdown scroller
+            // size when the LazyDataView::setItemCountEstimate() has been
+            // called, i.e. as soon as the user opens the dropdown. Otherwise,
+            // the scroller size update would be triggered only after a manual
+            // scrolling to the next page, which is a bad UX.
+            if (size != ComboBoxDataController.this.forcedSize) {
+                ComboBoxDataController.this.forcedSize = size;
+                update.put("forceSize", true);
+            }
+            update.put("changes", changes);
+            update.put("updateId", updateId);
+            update.put("dataVersion", dataVersion);
+            String filter = ComboBoxDataController.this.lastFilter;
+            update.put("filter",
+                    filter == null ? Json.createNull() : Json.create(filter));
+            ComboBoxClientBatch
+                    .beforeConnectorCall(ComboBoxDataController.this.comboBox);
+            ComboBoxDataController.this.comboBox.getElement()
+                    .callJsFunction("$connector.applyUpdate", update);
         }
     }
 
@@ -110,14 +148,76 @@ class ComboBoxDataController<TItem> {
     // provided.
     private String lastFilter;
 
+    // Filter text currently applied to the data provider, which is kept when
+    // the last filter is cleared by a reset. Results are cached by this text.
+    private String appliedFilter;
+
+    // Size last applied unconditionally in the client-side
+    private int forcedSize = -1;
+
     private SerializableConsumer<String> filterSlot = filter -> {
         // Just ignore when setDataProvider has not been called
     };
 
     private Registration lazyOpenRegistration;
+    private Registration staleOpenRegistration;
     private Registration clearFilterOnCloseRegistration;
     private Registration dataProviderListener = null;
 
+    // Incremented when the items of the data provider change, so that the
+    // connector can drop the items it has kept for other filters
+    private int dataVersion;
+
+    // Cached item labels of the default filter, only set when using a list
+    // data provider without a custom item filter
+    private ComboBoxLabelIndex<TItem> labelIndex;
+
+    private boolean indexedFiltering;
+
+    private ComboBoxFilterMode filterMode = ComboBoxFilterMode.CONTAINS;
+
+    private ComboBoxFilterLocation filterLocation = ComboBoxFilterLocation.AUTO;
+
+    private boolean compactDataFormat;
+
+    private boolean stableKeys;
+
+    // Whether refreshing all data is postponed while the drop-down is closed
+    private boolean deferredRefresh;
+
+    private boolean sharedDataProviderListener;
+    private boolean refreshScheduled;
+
+    // 0 to use the page size
+    private int clientSideFilterThreshold;
+    private boolean clientSideFilter;
+
+    private ComboBoxSharedResultCache sharedResultCache;
+    private String sharedResultCacheDatasetId;
+
+    // Fetches through the shared result cache, the label index or the data
+    // provider, and caches the results if enabled
+    private final ComboBoxPageCache<TItem> pageCache;
+
+    // Serves the results loaded in the background in async mode, and passes
+    // other queries to the page cache
+    private final ComboBoxAsyncFetcher<TItem> asyncFetcher;
+
+    private boolean asyncFetching;
+    // Range last requested by the client-side connector, which is loaded when
+    // the data communicator queries items that have not been loaded
+    private int requestedStart;
+    private int requestedLength;
+    private String requestedFilter;
+    private transient Executor fetchExecutor;
+    private AsyncFetchItemsCallback<TItem> asyncFetchItems;
+    private SerializableFunction<String, CompletableFuture<Integer>> asyncSizeCallback;
+
+    // Converts the filter text into the filter of the current data provider
+    private SerializableFunction<String, ?> filterConverter;
+
+    private final ComboBoxRequestGovernor requestGovernor;
+
     /**
      * Creates a new data controller for that combo box
      *
@@ -130,6 +230,24 @@ class ComboBoxDataController<TItem> {
             SerializableSupplier<Locale> localeSupplier) {
         this.comboBox = comboBox;
         this.localeSupplier = localeSupplier;
+        pageCache = new ComboBoxPageCache<>(
+                new SharedCacheFetchHandler(new DataFetchHandler()),
+                () -> Objects.toString(appliedFilter, ""),
+                comboBox::getPageSize);
+        asyncFetcher = new ComboBoxAsyncFetcher<>(pageCache,
+                () -> Objects.toString(appliedFilter, ""),
+                this::loadMissingRange);
+        requestGovernor = new ComboBoxRequestGovernor(
+                command -> comboBox.runBeforeClientResponse(ui -> command.run()),
+                delay -> comboBox.getElement()
+                        .callJsFunction("$connector.retryAfter", delay));
+    }
+
+    /**
+     * Accesses the governor of the ranges requested by the client
+     */
+    ComboBoxRequestGovernor getRequestGovernor() {
+        return requestGovernor;
     }
 
     /**
@@ -172,6 +290,12 @@ class ComboBoxDataController<TItem> {
      * Called to notify this controller that the component has been attached
      */
     void onAttach() {
+        // Data change events are not received while detached
+        invalidateCaches();
+        dataVersion++;
+        // The client-side element may have been created again
+        forcedSize = -1;
+
         DataProvider<TItem, ?> dataProvider = getDataProvider();
         if (dataProvider != null) {
             setupDataProviderListener(dataProvider);
@@ -185,6 +309,9 @@ class ComboBoxDataController<TItem> {
      * Called to notify this controller that the component has been detached
      */
     void onDetach() {
+        // Results can not be delivered anymore
+        asyncFetcher.cancelPending();
+
         if (dataProviderListener != null) {
             dataProviderListener.remove();
             dataProviderListener = null;
@@ -202,6 +329,10 @@ class ComboBoxDataController<TItem> {
      */
     void reset() {
         lastFilter = null;
+        requestedStart = 0;
+        requestedLength = 0;
+        requestedFilter = null;
+        requestGovernor.reset();
         if (dataCommunicator != null) {
             dataCommunicator.setRequestedRange(0, 0);
             dataCommunicator.reset();
@@ -213,6 +344,231 @@ class ComboBoxDataController<TItem> {
                 comboBox.getElement()));
     }
 
+    /**
+     * Called to notify this controller that the item label generator of the
+     * combo box has changed
+     */
+    void onItemLabelGeneratorChange() {
+        if (labelIndex != null) {
+            labelIndex.setLabelGenerator(comboBox.getItemLabelGenerator());
+        }
+        invalidateCaches();
+        reset();
+    }
+
+    /**
+     * Sets whether the default filter of a list data provider uses an n-gram
+     * index for looking up the matching items
+     */
+    void setIndexedFiltering(boolean indexedFiltering) {
+        this.indexedFiltering = indexedFiltering;
+        if (labelIndex != null) {
+            labelIndex.setNGramIndexEnabled(indexedFiltering);
+        }
+    }
+
+    /**
+     * Gets whether the default filter of a list data provider uses an n-gram
+     * index for looking up the matching items
+     */
+    boolean isIndexedFiltering() {
+        return indexedFiltering;
+    }
+
+    /**
+     * Sets how the default filter matches the item labels, and refreshes the
+     * items of the web component
+     */
+    void setFilterMode(ComboBoxFilterMode filterMode) {
+        Objects.requireNonNull(filterMode, "Filter mode cannot be null");
+        this.filterMode = filterMode;
+        if (labelIndex != null) {
+            labelIndex.setFilterMode(filterMode);
+        }
+        pageCache.clear();
+        comboBox.getElement().setProperty("_filterMode",
+                filterMode.getClientName());
+        reset();
+    }
+
+    /**
+     * Gets how the default filter matches the item labels
+     */
+    ComboBoxFilterMode getFilterMode() {
+        return filterMode;
+    }
+
+    /**
+     * Sets where the items are filtered, and refreshes the items of the web
+     * component
+     */
+    void setFilterLocation(ComboBoxFilterLocation filterLocation) {
+        this.filterLocation = Objects.requireNonNull(filterLocation,
+                "Filter location cannot be null");
+        refreshAllData(shouldForceServerSideFiltering);
+    }
+
+    /**
+     * Gets where the items are filtered
+     */
+    ComboBoxFilterLocation getFilterLocation() {
+        return filterLocation;
+    }
+
+    /**
+     * Sets whether the keys of items are derived from their identifiers in the
+     * data provider
+     */
+    void setStableKeys(boolean stableKeys) {
+        this.stableKeys = stableKeys;
+        // The connector only keeps items of other filters with stable keys
+        comboBox.getElement().setProperty("_stableKeys", stableKeys);
+        if (dataCommunicator != null) {
+            dataCommunicator.setStableKeys(stableKeys);
+        }
+    }
+
+    /**
+     * Gets whether the keys of items are derived from their identifiers in the
+     * data provider
+     */
+    boolean isStableKeys() {
+        return stableKeys;
+    }
+
+    /**
+     * Sets whether refreshing all data of the data provider is postponed until
+     * the drop-down is opened
+     */
+    void setDeferredRefresh(boolean deferredRefresh) {
+        this.deferredRefresh = deferredRefresh;
+    }
+
+    /**
+     * Gets whether refreshing all data of the data provider is postponed until
+     * the drop-down is opened
+     */
+    boolean isDeferredRefresh() {
+        return deferredRefresh;
+    }
+
+    /**
+     * Sets whether data change events are received through a listener shared
+     * with other combo boxes using the same data provider
+     */
+    void setSharedDataProviderListener(boolean sharedDataProviderListener) {
+        if (this.sharedDataProviderListener == sharedDataProviderListener) {
+            return;
+        }
+        this.sharedDataProviderListener = sharedDataProviderListener;
+        if (dataProviderListener != null) {
+            setupDataProviderListener(getDataProvider());
+        }
+    }
+
+    /**
+     * Gets whether data change events are received through a listener shared
+     * with other combo boxes using the same data provider
+     */
+    boolean isSharedDataProviderListener() {
+        return sharedDataProviderListener;
+    }
+
+    /**
+     * Sets the largest number of items that are filtered in the client-side,
+     * or 0 to use the page size, and refreshes the items of the web component
+     */
+    void setClientSideFilterThreshold(int clientSideFilterThreshold) {
+        if (clientSideFilterThreshold < 0) {
+            throw new IllegalArgumentException(
+                    "Client-side filter threshold cannot be negative.");
+        }
+        this.clientSideFilterThreshold = clientSideFilterThreshold;
+        comboBox.getElement().setProperty("_clientSideFilterThreshold",
+                clientSideFilterThreshold);
+        refreshAllData(shouldForceServerSideFiltering);
+    }
+
+    /**
+     * Gets the largest number of items that are filtered in the client-side
+     */
+    int getClientSideFilterThreshold() {
+        return clientSideFilterThreshold > 0 ? clientSideFilterThreshold
+                : comboBox.getPageSize();
+    }
+
+    /**
+     * Sets the maximum number of pages of items that are cached per
+     * component, or 0 to disable the cache
+     */
+    void setPageCacheSize(int maxPages) {
+        pageCache.setMaxPages(maxPages);
+    }
+
+    /**
+     * Gets the maximum number of pages of items that are cached per component
+     */
+    int getPageCacheSize() {
+        return pageCache.getMaxPages();
+    }
+
+    /**
+     * Sets the application-wide cache for the results of the data provider, or
+     * {@code null} to not use a shared cache
+     */
+    void setSharedResultCache(ComboBoxSharedResultCache sharedResultCache,
+            String datasetId) {
+        if (sharedResultCache != null) {
+            Objects.requireNonNull(datasetId, "Data set id cannot be null");
+        }
+        this.sharedResultCache = sharedResultCache;
+        this.sharedResultCacheDatasetId = sharedResultCache == null ? null
+                : datasetId;
+        pageCache.clear();
+    }
+
+    /**
+     * Sets whether items requested by the client-side connector are loaded in
+     * the background
+     */
+    void setAsyncFetching(boolean asyncFetching) {
+        this.asyncFetching = asyncFetching;
+        asyncFetcher.clear();
+    }
+
+    /**
+     * Gets whether items requested by the client-side connector are loaded in
+     * the background
+     */
+    boolean isAsyncFetching() {
+        return asyncFetching;
+    }
+
+    /**
+     * Sets the executor for loading items in the background, or {@code null}
+     * to use the default executor
+     */
+    void setFetchExecutor(Executor fetchExecutor) {
+        this.fetchExecutor = fetchExecutor;
+    }
+
+    /**
+     * Sets whether pages of items are sent to the client-side connector in a
+     * columnar format, and refreshes the items of the web component
+     */
+    void setCompactDataFormat(boolean compactDataFormat) {
+        this.compactDataFormat = compactDataFormat;
+        reset();
+    }
+
+    /**
+     * Gets whether pages of items are sent to the client-side connector in a
+     * columnar format
+     */
+    boolean isCompactDataFormat() {
+        return compactDataFormat;
+    }
+
     /**
      * Called to confirm that an update has been processed by the client-side
      * connector
@@ -227,7 +583,73 @@ class ComboBoxDataController<TItem> {
     /**
      * Called when the client-side connector requests data
      */
-    void setRequestedRange(int start, int length, String filter) {
+    void setRequestedRange(int start, int length, String filter,
+            int prefetch) {
+        if (dataCommunicator != null && dataCommunicator.isFetchDeferred()) {
+            // Items can be requested without opening, e.g. when typing a
+            // filter with auto open disabled
+            refreshStaleData();
+        }
+        // All items filtered in the client-side are sent at once
+        ComboBoxRequestGovernor.Request request = requestGovernor.onRequest(
+                start, length, prefetch, filter,
+                clientSideFilter ? getClientSideFilterThreshold() : 0);
+        if (request != null) {
+            applyRequestedRange(request.getStart(), request.getLength(),
+                    request.getFilter());
+        }
+    }
+
+    private void applyRequestedRange(int start, int length, String filter) {
+        requestedStart = start;
+        requestedLength = length;
+        requestedFilter = filter;
+        if (isAsyncFetchApplicable() && !asyncFetcher
+                .hasResult(Objects.toString(filter, ""), start, length)) {
+            loadRange(start, length, filter);
+            return;
+        }
+        setRequestedRangeAndFilter(start, length, filter);
+    }
+
+    /**
+     * Starts loading a range of items in the background, and sets it as the
+     * requested range once it has been loaded
+     */
+    private void loadRange(int start, int length, String filter) {
+        UI ui = comboBox.getUI().get();
+        asyncFetcher.load(command -> ui.access(command::run),
+                Objects.toString(filter, ""), start, length, this::loadAsync,
+                () -> {
+                    setRequestedRangeAndFilter(start, length, filter);
+                    if (asyncFetcher.takeAnsweredPending()) {
+                        // A flush has been answered with no items while
+                        // loading, so the size and items need to be sent
+                        // again
+                        dataCommunicator.reset();
+                    }
+                });
+    }
+
+    /**
+     * Starts loading the requested range in the background for a query of the
+     * data communicator that the loaded result does not cover, for example
+     * after a refresh, instead of blocking the request thread
+     *
+     * @return whether the query is answered with no items while loading
+     */
+    private boolean loadMissingRange() {
+        if (!isAsyncFetchApplicable()) {
+            return false;
+        }
+        if (requestedLength > 0) {
+            loadRange(requestedStart, requestedLength, requestedFilter);
+        }
+        return true;
+    }
+
+    private void setRequestedRangeAndFilter(int start, int length,
+            String filter) {
         // If the filter is null, which indicates that the combo box was closed
         // before, then reset the data communicator to force sending an update
         // to the client connector. This covers an edge-case when using an empty
@@ -249,6 +671,7 @@ class ComboBoxDataController<TItem> {
      * Called by the client-side connector to reset the data communicator
      */
     void resetDataCommunicator() {
+        requestGovernor.reset();
         /*
          * The client filter from combo box will be used in the data
          * communicator only within 'setRequestedRange' calls to data provider,
@@ -283,14 +706,19 @@ class ComboBoxDataController<TItem> {
             userProvidedFilter = UserProvidedFilter.NO;
         }
 
+        Objects.requireNonNull(listDataProvider,
+                "List data provider cannot be null");
+
         // Cannot use the case insensitive contains shorthand from
         // ListDataProvider since it wouldn't react to locale changes
-        ComboBox.ItemFilter<TItem> defaultItemFilter = (item,
-                filterText) -> comboBox.getItemLabelGenerator().apply(item)
-                        .toLowerCase(localeSupplier.get())
-                        .contains(filterText.toLowerCase(localeSupplier.get()));
+        ComboBoxLabelIndex<TItem> defaultFilterIndex = new ComboBoxLabelIndex<>(
+                listDataProvider, comboBox.getItemLabelGenerator(),
+                localeSupplier);
+        defaultFilterIndex.setNGramIndexEnabled(indexedFiltering);
+        defaultFilterIndex.setFilterMode(filterMode);
 
-        setDataProvider(defaultItemFilter, listDataProvider);
+        setDataProvider(listDataProvider, defaultFilterIndex::createFilter);
+        labelIndex = defaultFilterIndex;
     }
 
     public void setDataProvider(ComboBox.FetchItemsCallback<TItem> fetchItems,
@@ -304,6 +732,20 @@ class ComboBoxDataController<TItem> {
                 query -> sizeCallback.apply(query.getFilter().orElse(""))));
     }
 
+    public void setAsyncDataProvider(
+            AsyncFetchItemsCallback<TItem> fetchItems,
+            SerializableFunction<String, CompletableFuture<Integer>> sizeCallback) {
+        Objects.requireNonNull(fetchItems, "Fetch callback cannot be null");
+        Objects.requireNonNull(sizeCallback, "Size callback cannot be null");
+        // Items are only loaded in the background, queries that are not
+        // covered by the loaded results are answered with no items while
+        // loading, see ComboBoxAsyncFetcher
+        setDataProvider((filter, offset, limit) -> Stream.empty(),
+                filter -> 0);
+        asyncFetchItems = fetchItems;
+        asyncSizeCallback = sizeCallback;
+    }
+
     public void setDataProvider(ComboBox.ItemFilter<TItem> itemFilter,
             ListDataProvider<TItem> listDataProvider) {
         Objects.requireNonNull(listDataProvider,
@@ -326,6 +768,10 @@ class ComboBoxDataController<TItem> {
             userProvidedFilter = UserProvidedFilter.YES;
         }
 
+        labelIndex = null;
+        asyncFetchItems = null;
+        asyncSizeCallback = null;
+
         if (dataCommunicator == null) {
             // Create data communicator with postponed initialisation
             dataCommunicator = new ComboBoxDataCommunicator<>(comboBox,
@@ -333,6 +779,8 @@ class ComboBoxDataController<TItem> {
                     data -> comboBox.getElement()
                             .callJsFunction("$connector.updateData", data),
                     comboBox.getElement().getNode());
+            dataCommunicator.setFetchHandler(asyncFetcher);
+            dataCommunicator.setStableKeys(stableKeys);
         }
 
         comboBox.getRenderManager().scheduleRender();
@@ -345,21 +793,27 @@ class ComboBoxDataController<TItem> {
 
             return filterConverter.apply(filterText);
         };
+        this.filterConverter = convertOrNull;
 
         SerializableConsumer<TComponent> providerFilterSlot = dataCommunicator
                 .setDataProvider(dataProvider,
                         convertOrNull.apply(comboBox.getFilter()));
+        appliedFilter = comboBox.getFilter();
 
         filterSlot = filter -> {
             if (!Objects.equals(filter, lastFilter)) {
                 providerFilterSlot.accept(convertOrNull.apply(filter));
                 lastFilter = filter;
+                appliedFilter = filter;
             }
         };
 
         shouldForceServerSideFiltering = userProvidedFilter == UserProvidedFilter.YES;
         setupDataProviderListener(dataProvider);
 
+        // The new data is loaded right away
+        removeStaleOpenRegistration();
+        dataCommunicator.setFetchDeferred(false);
         refreshAllData(shouldForceServerSideFiltering);
 
         userProvidedFilter = UserProvidedFilter.UNDECIDED;
@@ -374,16 +828,90 @@ class ComboBoxDataController<TItem> {
     }
 
     private void refreshAllData(boolean forceServerSideFiltering) {
+        pageCache.clear();
         if (dataCommunicator != null) {
             setClientSideFilter(!forceServerSideFiltering
-                    && dataCommunicator.getDataProvider()
-                            .size(new Query<>()) <= comboBox.getPageSize());
+                    && isClientSideFilterApplicable(filterLocation,
+                            dataCommunicator.getDataProvider(),
+                            getClientSideFilterThreshold()));
         }
 
         reset();
     }
 
+    /**
+     * Converts items generated by the data generators into a columnar format,
+     * which lists the property names once instead of repeating them for every
+     * item. Properties missing from an item are sent as {@code null}, and left
+     * out when the connector expands the items.
+     */
+    static JsonObject toColumns(List<JsonValue> items) {
+        Map<String, JsonArray> columns = new LinkedHashMap<>();
+        for (int row = 0; row < items.size(); row++) {
+            JsonObject item = (JsonObject) items.get(row);
+            for (String name : item.keys()) {
+                JsonArray column = columns.computeIfAbsent(name,
+                        key -> Json.createArray());
+                padColumn(column, row);
+                column.set(row, (JsonValue) item.get(name));
+            }
+        }
+
+        JsonArray names = Json.createArray();
+        JsonArray values = Json.createArray();
+        columns.forEach((name, column) -> {
+            padColumn(column, items.size());
+            names.set(names.length(), name);
+            values.set(values.length(), column);
+        });
+
+        JsonObject result = Json.createObject();
+        result.put("length", items.size());
+        result.put("names", names);
+        result.put("values", values);
+        return result;
+    }
+
+    private static void padColumn(JsonArray column, int length) {
+        while (column.length() < length) {
+            column.set(column.length(), Json.createNull());
+        }
+    }
+
+    /**
+     * Decides whether the items of the data provider can be filtered in the
+     * client-side. In automatic mode this only fetches up to one item more
+     * than the threshold, instead of counting all items of the data provider.
+     *
+     * @param filterLocation
+     *            where the items should be filtered
+     * @param dataProvider
+     *            the data provider of the combo box
+     * @param threshold
+     *            the largest number of items to filter in the client-side
+     * @return {@code true} if the items can be filtered in the client-side,
+     *         {@code false} otherwise
+     */
+    static <T, F> boolean isClientSideFilterApplicable(
+            ComboBoxFilterLocation filterLocation,
+            DataProvider<T, F> dataProvider, int threshold) {
+        switch (filterLocation) {
+        case CLIENT:
+            return true;
+        case SERVER:
+            return false;
+        default:
+            int probeLimit = threshold == Integer.MAX_VALUE ? threshold
+                    : threshold + 1;
+            try (Stream<T> items = dataProvider.fetch(new Query<>(0,
+                    probeLimit, Collections.emptyList(), null, null))) {
+                return items.limit(probeLimit).count() <= threshold;
+            }
+        }
+    }
+
     private void setClientSideFilter(boolean clientSideFilter) {
+        this.clientSideFilter = clientSideFilter;
         comboBox.getElement().setProperty("_clientSideFilter",
                 clientSideFilter);
     }
@@ -408,7 +936,7 @@ class ComboBoxDataController<TItem> {
         if (Boolean.TRUE.equals(event.getValue())) {
             removeLazyOpenRegistration();
             if (!comboBox.isAutoOpen()) {
-                setRequestedRange(0, comboBox.getPageSize(),
+                applyRequestedRange(0, comboBox.getPageSize(),
                         comboBox.getFilter());
             }
         }
@@ -421,6 +949,51 @@ class ComboBoxDataController<TItem> {
         }
     }
 
+    /**
+     * Refreshes all data once before the response, if the drop-down is
+     * opened. Otherwise, the data is only marked as stale and refreshed when
+     * the drop-down opens. Until then, the data communicator does not query
+     * the data provider.
+     */
+    private void scheduleRefresh() {
+        if (!comboBox.isOpened()) {
+            dataCommunicator.setFetchDeferred(true);
+        }
+        if (refreshScheduled) {
+            return;
+        }
+        refreshScheduled = true;
+        comboBox.runBeforeClientResponse(ui -> {
+            refreshScheduled = false;
+            if (comboBox.isOpened()) {
+                refreshStaleData();
+            } else {
+                dataCommunicator.setFetchDeferred(true);
+                if (staleOpenRegistration == null) {
+                    staleOpenRegistration = comboBox.getElement()
+                            .addPropertyChangeListener("opened", event -> {
+                                if (Boolean.TRUE.equals(event.getValue())) {
+                                    refreshStaleData();
+                                }
+                            });
+                }
+            }
+        });
+    }
+
+    private void refreshStaleData() {
+        removeStaleOpenRegistration();
+        dataCommunicator.setFetchDeferred(false);
+        refreshAllData(shouldForceServerSideFiltering);
+    }
+
+    private void removeStaleOpenRegistration() {
+        if (staleOpenRegistration != null) {
+            staleOpenRegistration.remove();
+            staleOpenRegistration = null;
+        }
+    }
+
     private void onInMemoryFilterOrSortingChange(
             SerializablePredicate<TItem> filter,
             SerializableComparator<TItem> sortComparator) {
@@ -434,19 +1007,242 @@ class ComboBoxDataController<TItem> {
         reset();
     }
 
+    private void invalidateCaches() {
+        pageCache.clear();
+        asyncFetcher.clear();
+    }
+
+    /**
+     * Whether the current request should be loaded in the background. Items
+     * of in-memory list data providers are always fetched in the request
+     * thread, as the default filter and its caches are not thread safe.
+     */
+    private boolean isAsyncFetchApplicable() {
+        return (asyncFetching || asyncFetchItems != null)
+                && dataCommunicator != null && labelIndex == null
+                && comboBox.getUI().isPresent();
+    }
+
+    /**
+     * Starts loading a range of items in the background, either with the
+     * async callbacks, or by querying the data provider in the fetch executor.
+     * Cancelling the returned future cancels the futures of the callbacks, or
+     * interrupts the data provider query.
+     */
+    private CompletableFuture<ComboBoxAsyncFetcher.Result<TItem>> loadAsync(
+            String filter, int start, int length, Integer knownSize) {
+        if (asyncFetchItems != null) {
+            CompletableFuture<Stream<TItem>> items = asyncFetchItems
+                    .fetchItems(filter, start, length);
+            CompletableFuture<Integer> size = knownSize != null
+                    ? CompletableFuture.completedFuture(knownSize)
+                    : asyncSizeCallback.apply(filter);
+            CompletableFuture<ComboBoxAsyncFetcher.Result<TItem>> result = items
+                    .thenApply(ComboBoxDataController::collect)
+                    .thenCombine(size, ComboBoxAsyncFetcher.Result::new);
+            result.whenComplete((loaded, error) -> {
+                if (result.isCancelled()) {
+                    items.cancel(true);
+                    size.cancel(true);
+                }
+            });
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        DataProvider<TItem, Object> dataProvider = (DataProvider<TItem, Object>) getDataProvider();
+        Object providerFilter = filterConverter.apply(filter);
+        List<QuerySortOrder> sortOrders = dataCommunicator.getBackEndSorting();
+        SerializableComparator<TItem> inMemorySorting = dataCommunicator
+                .getInMemorySorting();
+
+        CompletableFuture<ComboBoxAsyncFetcher.Result<TItem>> result = new CompletableFuture<>();
+        FutureTask<ComboBoxAsyncFetcher.Result<TItem>> task = new FutureTask<ComboBoxAsyncFetcher.Result<TItem>>(
+                () -> {
+                    List<TItem> items = collect(dataProvider.fetch(new Query<>(
+                            start, length, sortOrders, inMemorySorting,
+                            providerFilter)));
+                    int size = knownSize != null ? knownSize
+                            : dataProvider.size(new Query<>(providerFilter));
+                    return new ComboBoxAsyncFetcher.Result<>(items, size);
+                }) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    result.cancel(false);
+                    return;
+                }
+                try {
+                    result.complete(get());
+                } catch (ExecutionException e) {
+                    result.completeExceptionally(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.completeExceptionally(e);
+                }
+            }
+        };
+        result.whenComplete((loaded, error) -> {
+            if (result.isCancelled()) {
+                // Interrupts the query if it is running, or prevents it from
+                // starting if it is still queued
+                task.cancel(true);
+            }
+        });
+        getFetchExecutor().execute(task);
+        return result;
+    }
+
+    private Executor getFetchExecutor() {
+        return fetchExecutor != null ? fetchExecutor
+                : DefaultFetchExecutor.INSTANCE;
+    }
+
+    private static <T> List<T> collect(Stream<T> stream) {
+        try (Stream<T> items = stream) {
+            return items.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Holder of the default executor for loading items in the background,
+     * which uses virtual threads when running on a JVM that supports them
+     */
+    private static final class DefaultFetchExecutor {
+        private static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return ForkJoinPool.commonPool();
+            }
+        }
+    }
+
+    /**
+     * Gets the matching items from the label index, or {@code null} if the
+     * query needs to be handled by the data provider
+     */
+    private List<TItem> getIndexedMatches() {
+        if (labelIndex == null) {
+            return null;
+        }
+        return labelIndex.getMatches(dataCommunicator.getCurrentFilter(),
+                dataCommunicator.getInMemorySorting());
+    }
+
+    /**
+     * Serves fetch and size queries from the label index when the default
+     * filter is used
+     */
+    private final class DataFetchHandler
+            implements ComboBoxDataCommunicator.FetchHandler<TItem> {
+        @Override
+        public Stream<TItem> fetch(int offset, int limit) {
+            List<TItem> matches = getIndexedMatches();
+            if (matches == null) {
+                return dataCommunicator.fetchFromDataProvider(offset, limit);
+            }
+            int from = Math.min(offset, matches.size());
+            int to = (int) Math.min((long) from + limit, matches.size());
+            return matches.subList(from, to).stream();
+        }
+
+        @Override
+        public int size() {
+            List<TItem> matches = getIndexedMatches();
+            if (matches == null) {
+                return dataCommunicator.getSizeFromDataProvider();
+            }
+            return matches.size();
+        }
+    }
+
+    /**
+     * Serves fetch and size queries from the shared result cache, if one is
+     * set
+     */
+    private final class SharedCacheFetchHandler
+            implements ComboBoxDataCommunicator.FetchHandler<TItem> {
+        private final ComboBoxDataCommunicator.FetchHandler<TItem> delegate;
+
+        private SharedCacheFetchHandler(
+                ComboBoxDataCommunicator.FetchHandler<TItem> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Stream<TItem> fetch(int offset, int limit) {
+            if (sharedResultCache == null) {
+                return delegate.fetch(offset, limit);
+            }
+            return sharedResultCache
+                    .getItems(sharedResultCacheDatasetId,
+                            Objects.toString(appliedFilter, ""), filterMode,
+                            localeSupplier.get(), offset, limit,
+                            () -> {
+                                try (Stream<TItem> items = delegate
+                                        .fetch(offset, limit)) {
+                                    return items.collect(Collectors.toList());
+                                }
+                            })
+                    .stream();
+        }
+
+        @Override
+        public int size() {
+            if (sharedResultCache == null) {
+                return delegate.size();
+            }
+            return sharedResultCache.getSize(sharedResultCacheDatasetId,
+                    Objects.toString(appliedFilter, ""), filterMode,
+                    localeSupplier.get(), delegate::size);
+        }
+    }
+
     private <C> void setupDataProviderListener(
             DataProvider<TItem, C> dataProvider) {
         if (dataProviderListener != null) {
             dataProviderListener.remove();
         }
-        dataProviderListener = dataProvider.addDataProviderListener(e -> {
+        DataProviderListener<TItem> listener = e -> {
+            invalidateCaches();
+            dataVersion++;
             if (e instanceof DataChangeEvent.DataRefreshEvent) {
-                dataCommunicator
-                        .refresh(((DataChangeEvent.DataRefreshEvent<TItem>) e)
-                                .getItem());
+                TItem item = ((DataChangeEvent.DataRefreshEvent<TItem>) e)
+                        .getItem();
+                if (sharedResultCache != null) {
+                    invalidateSharedResults(dataProvider, item);
+                }
+                dataCommunicator.refresh(item);
+                return;
+            }
+            if (sharedResultCache != null) {
+                sharedResultCache.invalidate(sharedResultCacheDatasetId);
+            }
+            if (deferredRefresh) {
+                scheduleRefresh();
             } else {
                 refreshAllData(shouldForceServerSideFiltering);
             }
-        });
+        };
+        dataProviderListener = sharedDataProviderListener
+                ? ComboBoxDataProviderListeners.addListener(dataProvider,
+                        comboBox, listener)
+                : dataProvider.addDataProviderListener(listener);
+    }
+
+    /**
+     * Removes the shared results that may be affected by a change of one item
+     */
+    @SuppressWarnings("unchecked")
+    private void invalidateSharedResults(DataProvider<TItem, ?> dataProvider,
+            TItem item) {
+        sharedResultCache.invalidate(sharedResultCacheDatasetId,
+                dataProvider.getId(item),
+                other -> dataProvider.getId((TItem) other));
     }
 }
@@ -0,0 +1,315 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.data.provider.DataChangeEvent;
+import com.vaadin.flow.data.provider.DataChangeEvent.DataRefreshEvent;
+import com.vaadin.flow.data.provider.DataProvider;
+import com.vaadin.flow.data.provider.DataProviderListener;
+import com.vaadin.flow.server.VaadinSession;
+import com.vaadin.flow.shared.Registration;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+/**
+ * Registry that listens to a data provider once on behalf of all combo boxes
+ * using it, instead of registering one listener per component.
+ * <p>
+ * The registry only keeps weak references to the listeners of the combo
+ * boxes, which are kept alive by the {@link Registration} returned to each
+ * component, so that components that are no longer used are not retained.
+ * The listener on the data provider is removed, and the data provider is
+ * released, when its last listener is removed or has been garbage collected.
+ * Collected listeners are purged whenever a listener is added or removed,
+ * and when dispatching an event.
+ * <p>
+ * Events are delivered right away to combo boxes of sessions locked by the
+ * current thread, and to combo boxes that are not attached to a UI. For other
+ * UIs, the events are queued and delivered with one {@link UI#access} per UI,
+ * in which a refresh of all items supersedes the events queued before it.
+ * The UI of a combo box is tracked with its attach and detach events, so that
+ * dispatching never reads the component tree of another session.
+ */
+final class ComboBoxDataProviderListeners {
+
+    // Guards the listeners and the queued events
+    private static final Object LOCK = new Object();
+
+    private static final Map<DataProvider<?, ?>, Listeners> LISTENERS = new IdentityHashMap<>();
+
+    // References to subscriptions that have been garbage collected
+    private static final ReferenceQueue<Subscription<?>> COLLECTED = new ReferenceQueue<>();
+
+    // Events waiting to be delivered to the combo boxes of a UI
+    private static final Map<UI, Map<Listeners, List<DataChangeEvent<?>>>> QUEUED_EVENTS = new WeakHashMap<>();
+
+    private ComboBoxDataProviderListeners() {
+    }
+
+    /**
+     * Adds a listener for the data change events of a data provider.
+     *
+     * @param dataProvider
+     *            the data provider to listen to
+     * @param component
+     *            the component that the listener updates
+     * @param listener
+     *            the listener to notify
+     * @return a registration for removing the listener, which needs to be
+     *         kept by the component as long as the listener is used
+     */
+    static <T> Registration addListener(DataProvider<T, ?> dataProvider,
+            Component component, DataProviderListener<T> listener) {
+        Subscription<T> subscription = new Subscription<>(
+                Objects.requireNonNull(dataProvider),
+                Objects.requireNonNull(component),
+                Objects.requireNonNull(listener));
+        subscribe(subscription);
+        return subscription;
+    }
+
+    private static void subscribe(Subscription<?> subscription) {
+        synchronized (LOCK) {
+            Listeners listeners = LISTENERS.get(subscription.dataProvider);
+            if (listeners == null) {
+                listeners = new Listeners();
+                LISTENERS.put(subscription.dataProvider, listeners);
+                listeners.registration = subscription.dataProvider
+                        .addDataProviderListener(listeners::dispatch);
+            }
+            listeners.subscriptions.add(new SubscriptionReference(
+                    subscription, COLLECTED));
+            purgeCollected();
+        }
+    }
+
+    private static void unsubscribe(Subscription<?> subscription) {
+        synchronized (LOCK) {
+            Listeners listeners = LISTENERS.get(subscription.dataProvider);
+            if (listeners == null) {
+                return;
+            }
+            listeners.subscriptions.removeIf(reference -> {
+                Subscription<?> other = reference.get();
+                return other == null || other == subscription;
+            });
+            removeIfEmpty(subscription.dataProvider, listeners);
+            purgeCollected();
+        }
+    }
+
+    /**
+     * Removes the references to garbage collected subscriptions, and the
+     * listeners of data providers that have no subscriptions left. Needs to
+     * be called while holding the lock.
+     */
+    private static void purgeCollected() {
+        Reference<? extends Subscription<?>> reference;
+        while ((reference = COLLECTED.poll()) != null) {
+            DataProvider<?, ?> dataProvider = ((SubscriptionReference) reference)
+                    .dataProvider;
+            Listeners listeners = LISTENERS.get(dataProvider);
+            if (listeners != null) {
+                listeners.subscriptions.remove(reference);
+                removeIfEmpty(dataProvider, listeners);
+            }
+        }
+    }
+
+    private static void removeIfEmpty(DataProvider<?, ?> dataProvider,
+            Listeners listeners) {
+        if (listeners.subscriptions.isEmpty()) {
+            listeners.registration.remove();
+            LISTENERS.remove(dataProvider);
+        }
+    }
+
+    private static void dispatch(Listeners listeners,
+            DataChangeEvent<?> event) {
+        List<Subscription<?>> direct = new ArrayList<>();
+        List<UI> uisToAccess = new ArrayList<>();
+        synchronized (LOCK) {
+            // The listener of the data provider is not removed here even if
+            // no subscriptions are left, as the data provider is iterating
+            // its listeners, but on the next subscribe or unsubscribe
+            Iterator<SubscriptionReference> iterator = listeners.subscriptions
+                    .iterator();
+            while (iterator.hasNext()) {
+                Subscription<?> subscription = iterator.next().get();
+                if (subscription == null) {
+                    iterator.remove();
+                    continue;
+                }
+                UI ui = subscription.ui;
+                VaadinSession session = ui == null ? null : ui.getSession();
+                if (session == null || session.hasLock()) {
+                    direct.add(subscription);
+                } else if (queue(ui, listeners, event)) {
+                    uisToAccess.add(ui);
+                }
+            }
+        }
+
+        direct.forEach(subscription -> subscription.fire(event));
+        for (UI ui : uisToAccess) {
+            try {
+                ui.access(() -> deliver(ui));
+            } catch (UIDetachedException e) {
+                synchronized (LOCK) {
+                    QUEUED_EVENTS.remove(ui);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues an event for the combo boxes of a UI, and returns whether the
+     * delivery needs to be scheduled
+     */
+    private static boolean queue(UI ui, Listeners listeners,
+            DataChangeEvent<?> event) {
+        Map<Listeners, List<DataChangeEvent<?>>> queued = QUEUED_EVENTS
+                .get(ui);
+        boolean schedule = queued == null;
+        if (schedule) {
+            queued = new LinkedHashMap<>();
+            QUEUED_EVENTS.put(ui, queued);
+        }
+        List<DataChangeEvent<?>> events = queued.computeIfAbsent(listeners,
+                key -> new ArrayList<>());
+        if (events.contains(event)) {
+            // Already queued for another combo box of the UI
+            return false;
+        }
+        if (!(event instanceof DataRefreshEvent)) {
+            // Refreshing all items covers the earlier events
+            events.clear();
+        }
+        events.add(event);
+        return schedule;
+    }
+
+    private static void deliver(UI ui) {
+        Map<Listeners, List<DataChangeEvent<?>>> queued;
+        synchronized (LOCK) {
+            queued = QUEUED_EVENTS.remove(ui);
+        }
+        if (queued == null) {
+            return;
+        }
+        queued.forEach((listeners, events) -> {
+            List<Subscription<?>> subscriptions = listeners
+                    .getSubscriptions(ui);
+            for (DataChangeEvent<?> event : events) {
+                subscriptions.forEach(subscription -> subscription.fire(event));
+            }
+        });
+    }
+
+    /**
+     * The listener registered on a data provider, and the combo boxes it
+     * notifies
+     */
+    private static final class Listeners implements Serializable {
+        // Not restored when a copy of the data provider is deserialized, the
+        // subscriptions register again with the copy instead
+        private transient List<SubscriptionReference> subscriptions = new ArrayList<>();
+        private Registration registration;
+
+        private void dispatch(DataChangeEvent<?> event) {
+            if (subscriptions != null) {
+                ComboBoxDataProviderListeners.dispatch(this, event);
+            }
+        }
+
+        private List<Subscription<?>> getSubscriptions(UI ui) {
+            List<Subscription<?>> result = new ArrayList<>();
+            synchronized (LOCK) {
+                for (SubscriptionReference reference : subscriptions) {
+                    Subscription<?> subscription = reference.get();
+                    if (subscription != null && subscription.ui == ui) {
+                        result.add(subscription);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Weak reference to a subscription, which remembers the data provider for
+     * purging the reference once the subscription has been collected
+     */
+    private static final class SubscriptionReference
+            extends WeakReference<Subscription<?>> {
+        private final DataProvider<?, ?> dataProvider;
+
+        private SubscriptionReference(Subscription<?> subscription,
+                ReferenceQueue<Subscription<?>> queue) {
+            super(subscription, queue);
+            dataProvider = subscription.dataProvider;
+        }
+    }
+
+    /**
+     * The listener of a combo box, kept alive by the component
+     */
+    private static final class Subscription<T> implements Registration {
+        private final DataProvider<T, ?> dataProvider;
+        private final DataProviderListener<T> listener;
+        private final Registration attachRegistration;
+        private final Registration detachRegistration;
+        // The UI of the component, updated while holding its session lock,
+        // and read when dispatching events in any thread
+        private volatile UI ui;
+        private volatile boolean removed;
+
+        private Subscription(DataProvider<T, ?> dataProvider,
+                Component component, DataProviderListener<T> listener) {
+            this.dataProvider = dataProvider;
+            this.listener = listener;
+            ui = component.getUI().orElse(null);
+            attachRegistration = component
+                    .addAttachListener(event -> ui = event.getUI());
+            detachRegistration = component
+                    .addDetachListener(event -> ui = null);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void fire(DataChangeEvent<?> event) {
+            if (!removed) {
+                listener.onDataChange((DataChangeEvent<T>) event);
+            }
+        }
+
+        @Override
+        public void remove() {
+            removed = true;
+            attachRegistration.remove();
+            detachRegistration.remove();
+            unsubscribe(this);
+        }
+
+        private void readObject(ObjectInputStream in)
+                throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            if (!removed) {
+                subscribe(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.vaadin.addons.componentfactory;
+
+/**
+ * Defines where the filtering of the items of a combo box is done.
+ */
+public enum ComboBoxFilterLocation {
+    /**
+     * Filters in the client-side if the data provider does not have more items
+     * than the client-side filter threshold, and in the server-side otherwise.
+     * Deciding this fetches at most one item more than the threshold from the
+     * data provider whenever the items are refreshed.
+     *
+     * @see AbstractComboBox#setClientSideFilterThreshold(int)
+     */
+    AUTO,
+
+    /**
+     * Always filters in the client-side, without querying the data provider
+     * for deciding it. Only the first items up to the client-side filter
+     * threshold are sent to the browser, so the data provider should not have
+     * more items than that.
+     *
+     * @see AbstractComboBox#setClientSideFilterThreshold(int)
+     */
+    CLIENT,
+
+    /**
+     * Always filters in the server-side, without querying the data provider
+     * for deciding it.
+     */
+    SERVER
+}
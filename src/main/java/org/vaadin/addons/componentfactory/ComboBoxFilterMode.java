@@ -0,0 +1,36 @@
+package org.vaadin.addons.componentfactory;
+
+/**
+ * Defines how the default filter of a combo box matches the filter text typed
+ * by the user against the item labels.
+ *
+ * @see AbstractComboBox#setFilterMode(ComboBoxFilterMode)
+ */
+public enum ComboBoxFilterMode {
+    /**
+     * Matches items where the filter text is a case insensitive substring of
+     * the label.
+     */
+    CONTAINS("contains"),
+
+    /**
+     * Matches items where the label starts with the filter text, ignoring
+     * case.
+     */
+    STARTS_WITH("startsWith");
+
+    private final String clientName;
+
+    ComboBoxFilterMode(String clientName) {
+        this.clientName = clientName;
+    }
+
+    /**
+     * Gets the name of the filter mode in the client-side connector.
+     *
+     * @return the client-side name
+     */
+    String getClientName() {
+        return clientName;
+    }
+}
@@ -0,0 +1,373 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.data.provider.DataKeyMapper;
+import com.vaadin.flow.function.SerializablePredicate;
+import com.vaadin.flow.function.ValueProvider;
+
+import java.util.Objects;
+
+/**
+ * Compact key mapper that does not remove the key of an item as long as it is
+ * selected.
+ * <p>
+ * Keys are consecutive integers. Both the key to item and the item identifier
+ * to key mappings are stored in open addressing tables backed by plain arrays,
+ * so that no entry objects or boxed keys are allocated. The tables are only
+ * allocated when the first key is generated, and released when all keys are
+ * removed. Items that could not be removed because they were selected are
+ * flagged in the table, and purged without allocating when the selection
+ * changes.
+ *
+ * @param <TItem>
+ *            The type of the item selectable in the combo box
+ */
+class ComboBoxKeyMapper<TItem> implements DataKeyMapper<TItem> {
+
+    private static final String NULL_KEY = "null";
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final SerializablePredicate<TItem> isSelected;
+
+    private ValueProvider<TItem, Object> identifierGetter = item -> item;
+
+    // Key to item table, empty slots have key 0
+    private int[] keys;
+    private Object[] items;
+    // Whether the item has been removed, but kept because it is selected
+    private boolean[] marked;
+
+    // Item identifier to key table, empty slots have a null identifier
+    private Object[] ids;
+    private int[] idKeys;
+
+    private int size;
+    private int markedCount;
+    private int lastKey;
+
+    /**
+     * Creates a new key mapper
+     *
+     * @param isSelected
+     *            tells whether an item is currently selected
+     */
+    ComboBoxKeyMapper(SerializablePredicate<TItem> isSelected) {
+        this.isSelected = Objects.requireNonNull(isSelected);
+    }
+
+    @Override
+    public String key(TItem item) {
+        if (item == null) {
+            return NULL_KEY;
+        }
+        Object id = getId(item);
+        int idSlot = findId(id);
+        if (idSlot >= 0) {
+            int key = idKeys[idSlot];
+            // Unmark the item when it becomes active again
+            int slot = findKey(key);
+            if (marked[slot]) {
+                marked[slot] = false;
+                markedCount--;
+            }
+            return Integer.toString(key);
+        }
+
+        ensureCapacity(size + 1);
+        int key = nextKey();
+        insertKey(key, item, false);
+        insertId(id, key);
+        size++;
+        return Integer.toString(key);
+    }
+
+    @Override
+    public boolean has(TItem item) {
+        return item != null && findId(getId(item)) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public TItem get(String key) {
+        if (key == null || size == 0) {
+            return null;
+        }
+        int slot;
+        try {
+            slot = findKey(Integer.parseInt(key));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return slot >= 0 ? (TItem) items[slot] : null;
+    }
+
+    @Override
+    public void remove(TItem item) {
+        if (item == null) {
+            return;
+        }
+        int idSlot = findId(getId(item));
+        if (idSlot < 0) {
+            return;
+        }
+        if (isSelected.test(item)) {
+            // Mark item for removal as soon as it is not selected anymore
+            int slot = findKey(idKeys[idSlot]);
+            if (!marked[slot]) {
+                marked[slot] = true;
+                markedCount++;
+            }
+            return;
+        }
+        removeKey(idKeys[idSlot]);
+        removeIdAt(idSlot);
+        size--;
+        releaseIfEmpty();
+    }
+
+    @Override
+    public void removeAll() {
+        keys = null;
+        items = null;
+        marked = null;
+        ids = null;
+        idKeys = null;
+        size = 0;
+        markedCount = 0;
+    }
+
+    @Override
+    public void refresh(TItem item) {
+        if (item == null) {
+            return;
+        }
+        int idSlot = findId(getId(item));
+        if (idSlot >= 0) {
+            items[findKey(idKeys[idSlot])] = item;
+        }
+    }
+
+    @Override
+    public void setIdentifierGetter(
+            ValueProvider<TItem, Object> identifierGetter) {
+        if (this.identifierGetter == identifierGetter) {
+            return;
+        }
+        this.identifierGetter = identifierGetter;
+        if (size > 0) {
+            rebuildIds();
+        }
+    }
+
+    /**
+     * Removes the keys of items that were kept because they were selected,
+     * and are not selected anymore
+     */
+    @SuppressWarnings("unchecked")
+    void purge() {
+        if (markedCount == 0) {
+            return;
+        }
+        int slot = 0;
+        while (slot < keys.length && markedCount > 0) {
+            if (keys[slot] != 0 && marked[slot]
+                    && !isSelected.test((TItem) items[slot])) {
+                markedCount--;
+                removeIdAt(findId(getId((TItem) items[slot])));
+                removeKeyAt(slot);
+                size--;
+                // Another entry may have been moved into this slot
+                if (keys[slot] != 0) {
+                    continue;
+                }
+            }
+            slot++;
+        }
+        releaseIfEmpty();
+    }
+
+    /**
+     * Releases the tables once the last key has been removed, keeping the
+     * last generated key so that keys are not reused right away
+     */
+    private void releaseIfEmpty() {
+        if (size == 0) {
+            removeAll();
+        }
+    }
+
+    /**
+     * Gets the number of slots in the tables, or 0 if they are not allocated
+     */
+    int getCapacity() {
+        return keys == null ? 0 : keys.length;
+    }
+
+    private Object getId(TItem item) {
+        return Objects.requireNonNull(identifierGetter.apply(item),
+                "Identifier of an item cannot be null");
+    }
+
+    private int nextKey() {
+        do {
+            lastKey = lastKey == Integer.MAX_VALUE ? 1 : lastKey + 1;
+        } while (size > 0 && findKey(lastKey) >= 0);
+        return lastKey;
+    }
+
+    private static int hash(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int findKey(int key) {
+        if (keys == null) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            if (keys[slot] == 0) {
+                return -1;
+            }
+        }
+    }
+
+    private int findId(Object id) {
+        if (ids == null) {
+            return -1;
+        }
+        int mask = ids.length - 1;
+        for (int slot = hash(id.hashCode()) & mask;; slot = (slot + 1)
+                & mask) {
+            if (ids[slot] == null) {
+                return -1;
+            }
+            if (ids[slot].equals(id)) {
+                return slot;
+            }
+        }
+    }
+
+    private void insertKey(int key, Object item, boolean isMarked) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        items[slot] = item;
+        marked[slot] = isMarked;
+    }
+
+    private void insertId(Object id, int key) {
+        int mask = ids.length - 1;
+        int slot = hash(id.hashCode()) & mask;
+        while (ids[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        ids[slot] = id;
+        idKeys[slot] = key;
+    }
+
+    private void removeKey(int key) {
+        int slot = findKey(key);
+        if (slot >= 0) {
+            removeKeyAt(slot);
+        }
+    }
+
+    /**
+     * Removes an entry by shifting the following entries of the probe
+     * sequence backwards, so that no tombstones are needed
+     */
+    private void removeKeyAt(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != 0; next = (next
+                + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (isBetween(home, hole, next)) {
+                continue;
+            }
+            keys[hole] = keys[next];
+            items[hole] = items[next];
+            marked[hole] = marked[next];
+            hole = next;
+        }
+        keys[hole] = 0;
+        items[hole] = null;
+        marked[hole] = false;
+    }
+
+    private void removeIdAt(int slot) {
+        int mask = ids.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; ids[next] != null; next = (next
+                + 1) & mask) {
+            int home = hash(ids[next].hashCode()) & mask;
+            if (isBetween(home, hole, next)) {
+                continue;
+            }
+            ids[hole] = ids[next];
+            idKeys[hole] = idKeys[next];
+            hole = next;
+        }
+        ids[hole] = null;
+        idKeys[hole] = 0;
+    }
+
+    /**
+     * Whether the home slot of an entry lies cyclically after the hole and not
+     * after the entry, in which case the entry can not be moved to the hole
+     */
+    private static boolean isBetween(int home, int hole, int slot) {
+        return hole <= slot ? hole < home && home <= slot
+                : hole < home || home <= slot;
+    }
+
+    private void ensureCapacity(int requiredSize) {
+        if (keys == null) {
+            allocate(INITIAL_CAPACITY);
+            return;
+        }
+        // Keep the tables at most half full for short probe sequences
+        if (requiredSize * 2 <= keys.length) {
+            return;
+        }
+        int[] oldKeys = keys;
+        Object[] oldItems = items;
+        boolean[] oldMarked = marked;
+        Object[] oldIds = ids;
+        int[] oldIdKeys = idKeys;
+        allocate(oldKeys.length * 2);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != 0) {
+                insertKey(oldKeys[slot], oldItems[slot], oldMarked[slot]);
+            }
+            if (oldIds[slot] != null) {
+                insertId(oldIds[slot], oldIdKeys[slot]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        items = new Object[capacity];
+        marked = new boolean[capacity];
+        ids = new Object[capacity];
+        idKeys = new int[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rebuildIds() {
+        ids = new Object[keys.length];
+        idKeys = new int[keys.length];
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                insertId(getId((TItem) items[slot]), keys[slot]);
+            }
+        }
+    }
+}
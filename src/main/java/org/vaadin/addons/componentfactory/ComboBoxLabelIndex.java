@@ -0,0 +1,649 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.component.ItemLabelGenerator;
+import com.vaadin.flow.data.provider.DataChangeEvent;
+import com.vaadin.flow.data.provider.DataProviderListener;
+import com.vaadin.flow.data.provider.ListDataProvider;
+import com.vaadin.flow.function.SerializableComparator;
+import com.vaadin.flow.function.SerializableFunction;
+import com.vaadin.flow.function.SerializablePredicate;
+import com.vaadin.flow.function.SerializableSupplier;
+import com.vaadin.flow.shared.Registration;
+
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.WeakHashMap;
+
+/**
+ * Internal class that caches the lower case labels of the items in a list data
+ * provider, which are used by the default in-memory filter of the combo box.
+ * This avoids generating and lower-casing the label of every item each time
+ * the user changes the filter.
+ * <p>
+ * The labels, the indexes built from them and the results of recent filters
+ * are shared by all combo boxes that use the same list data provider instance
+ * with the same item label generator instance, for example a data provider of
+ * an application scoped bean used in all sessions. They are built lazily for
+ * each locale, and are dropped when the data provider fires a data change
+ * event. Items that are added or removed without refreshing the data provider
+ * are noticed by the changed number of items, other changes need a call to
+ * {@link #invalidate()}. The shared labels are only kept as long as a combo
+ * box uses them.
+ * <p>
+ * The matching items for a filter can also be looked up directly, see
+ * {@link #getMatches(Object, SerializableComparator)}. Substring lookups use a
+ * {@link ComboBoxNGramIndex} when n-gram indexing is enabled, and prefix
+ * lookups always use a {@link ComboBoxPrefixIndex}.
+ *
+ * @param <TItem>
+ *            Type of individual items that are selectable in the combo box
+ */
+class ComboBoxLabelIndex<TItem> implements Serializable {
+
+    /**
+     * Maximum number of recent filter results that are kept for narrowing
+     * down the results of longer filters
+     */
+    private static final int MAX_CACHED_RESULTS = 16;
+
+    /**
+     * Maximum total number of positions in the recent filter results, which
+     * bounds the memory used by them to about 1 MB regardless of the number
+     * of items. Results with more positions are not kept at all.
+     */
+    static final int MAX_CACHED_POSITIONS = 1 << 18;
+
+    // Shared labels by data provider and item label generator. Both maps have
+    // weak keys and the labels are weakly referenced, so that the labels are
+    // removed once no combo box uses them.
+    private static final Map<ListDataProvider<?>, Map<SerializableFunction<?, String>, WeakReference<SharedLabels<?>>>> SHARED_LABELS = new WeakHashMap<>();
+
+    private final ListDataProvider<TItem> listDataProvider;
+    private SerializableFunction<TItem, String> labelGenerator;
+    private final SerializableSupplier<Locale> localeSupplier;
+
+    private boolean nGramIndexEnabled;
+    private ComboBoxFilterMode filterMode = ComboBoxFilterMode.CONTAINS;
+
+    private transient SharedLabels<TItem> sharedLabels;
+
+    // Result of the last indexed lookup
+    private transient Snapshot<TItem> matchesSnapshot;
+    private transient String matchesFilter;
+    private transient ComboBoxFilterMode matchesFilterMode;
+    private transient Comparator<TItem> matchesInMemorySorting;
+    private transient Comparator<TItem> matchesProviderSorting;
+    private transient List<TItem> matches;
+
+    /**
+     * Creates a new label index for the items of the list data provider
+     *
+     * @param listDataProvider
+     *            the list data provider that contains the items
+     * @param labelGenerator
+     *            function that generates the label for an item, the labels
+     *            are shared with other indexes that use the same instance
+     * @param localeSupplier
+     *            supplier for the current locale of the combo box
+     */
+    ComboBoxLabelIndex(ListDataProvider<TItem> listDataProvider,
+            SerializableFunction<TItem, String> labelGenerator,
+            SerializableSupplier<Locale> localeSupplier) {
+        this.listDataProvider = Objects.requireNonNull(listDataProvider);
+        this.labelGenerator = Objects.requireNonNull(labelGenerator);
+        this.localeSupplier = Objects.requireNonNull(localeSupplier);
+    }
+
+    /**
+     * Sets whether filter lookups should use an n-gram index of the labels
+     * instead of scanning all labels. The index is built lazily on the first
+     * lookup.
+     */
+    void setNGramIndexEnabled(boolean nGramIndexEnabled) {
+        this.nGramIndexEnabled = nGramIndexEnabled;
+        clearMatches();
+    }
+
+    /**
+     * Sets how filters created after this call match the item labels
+     */
+    void setFilterMode(ComboBoxFilterMode filterMode) {
+        this.filterMode = Objects.requireNonNull(filterMode);
+    }
+
+    /**
+     * Sets the function that generates the labels, after the item label
+     * generator of the combo box has changed
+     */
+    void setLabelGenerator(
+            SerializableFunction<TItem, String> labelGenerator) {
+        this.labelGenerator = Objects.requireNonNull(labelGenerator);
+        sharedLabels = null;
+        clearMatches();
+    }
+
+    /**
+     * Creates an in-memory filter that matches all items where the filter text
+     * is a case insensitive substring or prefix of the label of the item,
+     * depending on the filter mode.
+     *
+     * @param filterText
+     *            the filter text typed by the user, not {@code null}
+     * @return the filter for the list data provider
+     */
+    SerializablePredicate<TItem> createFilter(String filterText) {
+        Locale filterLocale = localeSupplier.get();
+        return new LabelFilter<>(this, filterText.toLowerCase(filterLocale),
+                filterLocale, filterMode);
+    }
+
+    /**
+     * Drops the cached labels, so that they are generated again on the next
+     * filter request. Only needed when the items have been changed without
+     * refreshing the data provider, as the labels are dropped on data change
+     * events.
+     */
+    void invalidate() {
+        getSharedLabels().invalidate();
+        clearMatches();
+    }
+
+    /**
+     * Gets the items that match a filter of the data communicator, in the
+     * order in which the list data provider would return them. Items are only
+     * materialized when they are accessed, unless the data provider has a
+     * filter or a sort order.
+     * <p>
+     * The results of recent filters are kept, so that when the user keeps
+     * typing, the results of a longer filter are found by only checking the
+     * results of the shorter one.
+     *
+     * @param filter
+     *            the filter currently set in the data communicator, or
+     *            {@code null} if none
+     * @param inMemorySorting
+     *            the in-memory sorting of the data communicator, or
+     *            {@code null} if none
+     * @return the matching items, or {@code null} if the filter is empty or
+     *         has not been created by this index
+     */
+    List<TItem> getMatches(Object filter,
+            SerializableComparator<TItem> inMemorySorting) {
+        if (!(filter instanceof LabelFilter)
+                || ((LabelFilter<?>) filter).index != this
+                || ((LabelFilter<?>) filter).normalizedFilter.isEmpty()) {
+            // Nothing to look up, the data provider is as fast
+            return null;
+        }
+        LabelFilter<?> labelFilter = (LabelFilter<?>) filter;
+        String normalizedFilter = labelFilter.normalizedFilter;
+        ComboBoxFilterMode lookupFilterMode = labelFilter.filterMode;
+
+        SharedLabels<TItem> shared = getSharedLabels();
+        Snapshot<TItem> snapshot = shared.getSnapshot(labelFilter.locale);
+        SerializableComparator<TItem> providerSorting = listDataProvider
+                .getSortComparator();
+        if (matches != null && snapshot == matchesSnapshot
+                && normalizedFilter.equals(matchesFilter)
+                && lookupFilterMode == matchesFilterMode
+                && inMemorySorting == matchesInMemorySorting
+                && providerSorting == matchesProviderSorting) {
+            return matches;
+        }
+
+        SerializablePredicate<TItem> providerFilter = listDataProvider
+                .getFilter();
+        Comparator<TItem> sorting = getSorting(inMemorySorting,
+                providerSorting);
+        List<TItem> result = new PositionList<>(snapshot.items,
+                shared.getPositions(snapshot, normalizedFilter,
+                        lookupFilterMode, nGramIndexEnabled));
+        if (providerFilter != null || sorting != null) {
+            List<TItem> filteredResult = new ArrayList<>(result.size());
+            for (TItem item : result) {
+                if (providerFilter == null || providerFilter.test(item)) {
+                    filteredResult.add(item);
+                }
+            }
+            if (sorting != null) {
+                filteredResult.sort(sorting);
+            }
+            result = filteredResult;
+        }
+
+        matchesSnapshot = snapshot;
+        matchesFilter = normalizedFilter;
+        matchesFilterMode = lookupFilterMode;
+        matchesInMemorySorting = inMemorySorting;
+        matchesProviderSorting = providerSorting;
+        matches = result;
+        return result;
+    }
+
+    /**
+     * Gets the lower case label of the item for the locale, generating and
+     * caching it if needed.
+     */
+    String getLabel(TItem item, Locale labelLocale) {
+        return getSharedLabels().getLabel(item, labelLocale);
+    }
+
+    /**
+     * Gets the total number of positions in the cached filter results
+     */
+    int getCachedPositionCount() {
+        return getSharedLabels().getCachedPositionCount();
+    }
+
+    /**
+     * Gets the labels shared with other indexes of the same data provider
+     * and item label generator, or creates them
+     */
+    @SuppressWarnings("unchecked")
+    private SharedLabels<TItem> getSharedLabels() {
+        if (sharedLabels == null) {
+            synchronized (SHARED_LABELS) {
+                Map<SerializableFunction<?, String>, WeakReference<SharedLabels<?>>> labelsByGenerator = SHARED_LABELS
+                        .computeIfAbsent(listDataProvider,
+                                provider -> new WeakHashMap<>());
+                WeakReference<SharedLabels<?>> reference = labelsByGenerator
+                        .get(labelGenerator);
+                sharedLabels = reference == null ? null
+                        : (SharedLabels<TItem>) reference.get();
+                if (sharedLabels == null) {
+                    sharedLabels = new SharedLabels<>(listDataProvider,
+                            labelGenerator);
+                    labelsByGenerator.put(labelGenerator,
+                            new WeakReference<>(sharedLabels));
+                }
+            }
+        }
+        return sharedLabels;
+    }
+
+    private static <TItem> Comparator<TItem> getSorting(
+            Comparator<TItem> inMemorySorting,
+            Comparator<TItem> providerSorting) {
+        // Same order of precedence as in ListDataProvider
+        if (inMemorySorting == null) {
+            return providerSorting;
+        }
+        if (providerSorting == null) {
+            return inMemorySorting;
+        }
+        return inMemorySorting.thenComparing(providerSorting);
+    }
+
+    private void clearMatches() {
+        matchesSnapshot = null;
+        matchesFilter = null;
+        matchesFilterMode = null;
+        matchesInMemorySorting = null;
+        matchesProviderSorting = null;
+        matches = null;
+    }
+
+    /**
+     * Labels of the items of a data provider generated by one item label
+     * generator, shared by the indexes of all combo boxes using both. The
+     * methods are synchronized, as the combo boxes may be in different
+     * sessions.
+     */
+    private static final class SharedLabels<TItem> {
+        private final ListDataProvider<TItem> listDataProvider;
+        private final SerializableFunction<TItem, String> labelGenerator;
+        private final Map<Locale, Snapshot<TItem>> snapshots = new HashMap<>();
+
+        private SharedLabels(ListDataProvider<TItem> listDataProvider,
+                SerializableFunction<TItem, String> labelGenerator) {
+            this.listDataProvider = listDataProvider;
+            this.labelGenerator = labelGenerator;
+            InvalidatingListener<TItem> listener = new InvalidatingListener<>(
+                    this);
+            listener.registration = listDataProvider
+                    .addDataProviderListener(listener);
+        }
+
+        private synchronized void invalidate() {
+            snapshots.clear();
+        }
+
+        /**
+         * Gets the labels for the locale, building them when there are none
+         * or the number of items has changed
+         */
+        private synchronized Snapshot<TItem> getSnapshot(Locale locale) {
+            Snapshot<TItem> snapshot = snapshots.get(locale);
+            if (snapshot == null || snapshot.items.size() != listDataProvider
+                    .getItems().size()) {
+                // The size check catches items that were added or removed
+                // without refreshing the data provider
+                snapshot = new Snapshot<>(Collections.unmodifiableList(
+                        new ArrayList<>(listDataProvider.getItems())));
+                for (int i = 0; i < snapshot.labels.length; i++) {
+                    snapshot.labels[i] = normalize(snapshot.items.get(i),
+                            locale);
+                }
+                snapshots.put(locale, snapshot);
+            }
+            return snapshot;
+        }
+
+        private synchronized String getLabel(TItem item, Locale locale) {
+            Snapshot<TItem> snapshot = snapshots.get(locale);
+            if (snapshot == null) {
+                snapshot = getSnapshot(locale);
+            }
+            if (snapshot.labelsByItem == null) {
+                snapshot.labelsByItem = new IdentityHashMap<>(
+                        snapshot.items.size());
+                for (int i = 0; i < snapshot.labels.length; i++) {
+                    snapshot.labelsByItem.put(snapshot.items.get(i),
+                            snapshot.labels[i]);
+                }
+            }
+            String label = snapshot.labelsByItem.get(item);
+            if (label == null) {
+                // The item was added to the backing collection without
+                // refreshing the data provider
+                label = normalize(item, locale);
+                snapshot.labelsByItem.put(item, label);
+            }
+            return label;
+        }
+
+        private synchronized int getCachedPositionCount() {
+            int count = 0;
+            for (Snapshot<TItem> snapshot : snapshots.values()) {
+                count += snapshot.cachedPositionCount;
+            }
+            return count;
+        }
+
+        /**
+         * Gets the positions of the labels matching the filter, either from
+         * the cached results of the filter itself or of a shorter filter that
+         * it extends, or from the indexes
+         */
+        private synchronized int[] getPositions(Snapshot<TItem> snapshot,
+                String normalizedFilter, ComboBoxFilterMode lookupFilterMode,
+                boolean nGramIndexEnabled) {
+            CachedPositionsKey key = new CachedPositionsKey(normalizedFilter,
+                    lookupFilterMode);
+            int[] positions = snapshot.cachedPositions.get(key);
+            if (positions != null) {
+                return positions;
+            }
+
+            // Find the longest cached filter that the new filter extends.
+            // Every label that matches the new filter also matches that one.
+            CachedPositionsKey ancestor = null;
+            for (CachedPositionsKey cachedKey : snapshot.cachedPositions
+                    .keySet()) {
+                if (cachedKey.extendedBy(key) && (ancestor == null
+                        || cachedKey.filter.length() > ancestor.filter
+                                .length())) {
+                    ancestor = cachedKey;
+                }
+            }
+
+            if (ancestor != null) {
+                positions = snapshot.narrow(
+                        snapshot.cachedPositions.get(ancestor),
+                        normalizedFilter, lookupFilterMode);
+            } else {
+                positions = snapshot.findPositions(normalizedFilter,
+                        lookupFilterMode, nGramIndexEnabled);
+            }
+            snapshot.cachePositions(key, positions);
+            return positions;
+        }
+
+        private String normalize(TItem item, Locale locale) {
+            if (item == null) {
+                return "";
+            }
+            String label = labelGenerator.apply(item);
+            if (label == null) {
+                throw new IllegalStateException(String.format(
+                        "Got 'null' as a label value for the item '%s'. "
+                                + "'%s' instance may not return 'null' values",
+                        item, ItemLabelGenerator.class.getSimpleName()));
+            }
+            return label.toLowerCase(locale);
+        }
+    }
+
+    /**
+     * Drops the shared labels on data change events. The labels are only
+     * weakly referenced, so that the listener registered in the data provider
+     * does not keep them, and the listener removes itself once they are gone.
+     */
+    private static final class InvalidatingListener<TItem>
+            implements DataProviderListener<TItem> {
+        private final transient WeakReference<SharedLabels<?>> labels;
+        private transient Registration registration;
+
+        private InvalidatingListener(SharedLabels<?> labels) {
+            this.labels = new WeakReference<>(labels);
+        }
+
+        @Override
+        public void onDataChange(DataChangeEvent<TItem> event) {
+            SharedLabels<?> sharedLabels = labels == null ? null
+                    : labels.get();
+            if (sharedLabels != null) {
+                sharedLabels.invalidate();
+            } else if (registration != null) {
+                registration.remove();
+            }
+        }
+    }
+
+    /**
+     * Labels of the items for one locale, in the iteration order of the
+     * backing collection of the data provider, with the indexes and recent
+     * filter results built from them
+     */
+    private static final class Snapshot<TItem> {
+        private final List<TItem> items;
+        private final String[] labels;
+        // Items are looked up by identity, as the list data provider passes
+        // the same instances to the filter that are in its backing collection
+        private Map<TItem, String> labelsByItem;
+        private ComboBoxNGramIndex nGramIndex;
+        private ComboBoxPrefixIndex prefixIndex;
+        // Positions of the labels matching recent filters, least recently used
+        // first
+        private final Map<CachedPositionsKey, int[]> cachedPositions = new LinkedHashMap<>(
+                MAX_CACHED_RESULTS * 2, 0.75f, true);
+        // Total number of positions in the cached results
+        private int cachedPositionCount;
+
+        private Snapshot(List<TItem> items) {
+            this.items = items;
+            this.labels = new String[items.size()];
+        }
+
+        /**
+         * Keeps the positions matching a filter, evicting the least recently
+         * used results until both the number of results and the total number
+         * of positions are within bounds
+         */
+        private void cachePositions(CachedPositionsKey key, int[] positions) {
+            if (positions.length > MAX_CACHED_POSITIONS) {
+                return;
+            }
+            Iterator<int[]> eldest = cachedPositions.values().iterator();
+            while (eldest.hasNext()
+                    && (cachedPositions.size() >= MAX_CACHED_RESULTS
+                            || cachedPositionCount
+                                    + positions.length > MAX_CACHED_POSITIONS)) {
+                cachedPositionCount -= eldest.next().length;
+                eldest.remove();
+            }
+            cachedPositions.put(key, positions);
+            cachedPositionCount += positions.length;
+        }
+
+        private int[] narrow(int[] ancestorPositions, String normalizedFilter,
+                ComboBoxFilterMode lookupFilterMode) {
+            int[] positions = new int[ancestorPositions.length];
+            int count = 0;
+            for (int position : ancestorPositions) {
+                if (lookupFilterMode == ComboBoxFilterMode.STARTS_WITH
+                        ? labels[position].startsWith(normalizedFilter)
+                        : labels[position].contains(normalizedFilter)) {
+                    positions[count++] = position;
+                }
+            }
+            return count == positions.length ? positions
+                    : Arrays.copyOf(positions, count);
+        }
+
+        private int[] findPositions(String normalizedFilter,
+                ComboBoxFilterMode lookupFilterMode,
+                boolean nGramIndexEnabled) {
+            if (lookupFilterMode == ComboBoxFilterMode.STARTS_WITH) {
+                if (prefixIndex == null) {
+                    prefixIndex = new ComboBoxPrefixIndex(labels);
+                }
+                return prefixIndex.search(normalizedFilter);
+            }
+            if (nGramIndexEnabled && normalizedFilter
+                    .length() >= ComboBoxNGramIndex.GRAM_LENGTH) {
+                if (nGramIndex == null) {
+                    nGramIndex = new ComboBoxNGramIndex(labels);
+                }
+                return nGramIndex.search(normalizedFilter);
+            }
+
+            // Scan all labels when there is no index, or the filter is
+            // shorter than the n-grams
+            int[] positions = new int[labels.length];
+            int count = 0;
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i].contains(normalizedFilter)) {
+                    positions[count++] = i;
+                }
+            }
+            return count == positions.length ? positions
+                    : Arrays.copyOf(positions, count);
+        }
+    }
+
+    /**
+     * Default filter of the combo box, which keeps track of the index that
+     * created it so that the index can serve the matching items directly
+     */
+    private static final class LabelFilter<TItem>
+            implements SerializablePredicate<TItem> {
+        private final ComboBoxLabelIndex<TItem> index;
+        private final String normalizedFilter;
+        private final Locale locale;
+        private final ComboBoxFilterMode filterMode;
+
+        private LabelFilter(ComboBoxLabelIndex<TItem> index,
+                String normalizedFilter, Locale locale,
+                ComboBoxFilterMode filterMode) {
+            this.index = index;
+            this.normalizedFilter = normalizedFilter;
+            this.locale = locale;
+            this.filterMode = filterMode;
+        }
+
+        @Override
+        public boolean test(TItem item) {
+            if (normalizedFilter.isEmpty()) {
+                return true;
+            }
+            String label = index.getLabel(item, locale);
+            return filterMode == ComboBoxFilterMode.STARTS_WITH
+                    ? label.startsWith(normalizedFilter)
+                    : label.contains(normalizedFilter);
+        }
+    }
+
+    /**
+     * Key of cached filter results
+     */
+    private static final class CachedPositionsKey {
+        private final String filter;
+        private final ComboBoxFilterMode filterMode;
+
+        private CachedPositionsKey(String filter,
+                ComboBoxFilterMode filterMode) {
+            this.filter = filter;
+            this.filterMode = filterMode;
+        }
+
+        /**
+         * Whether all labels matching the other filter also match this one
+         */
+        private boolean extendedBy(CachedPositionsKey other) {
+            if (filterMode != other.filterMode) {
+                return false;
+            }
+            return filterMode == ComboBoxFilterMode.STARTS_WITH
+                    ? other.filter.startsWith(filter)
+                    : other.filter.contains(filter);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CachedPositionsKey)) {
+                return false;
+            }
+            CachedPositionsKey other = (CachedPositionsKey) obj;
+            return filter.equals(other.filter)
+                    && filterMode == other.filterMode;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filter, filterMode);
+        }
+    }
+
+    /**
+     * Read-only view of the items at the given positions, which avoids copying
+     * the matching items when only a page of them is fetched
+     */
+    private static final class PositionList<TItem> extends AbstractList<TItem>
+            implements RandomAccess {
+        private final List<TItem> items;
+        private final int[] positions;
+
+        private PositionList(List<TItem> items, int[] positions) {
+            this.items = items;
+            this.positions = positions;
+        }
+
+        @Override
+        public TItem get(int index) {
+            return items.get(positions[index]);
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.vaadin.addons.componentfactory;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Internal inverted index from the trigrams of item labels to the positions of
+ * the labels that contain them. It is used for finding the labels that contain
+ * a filter text without scanning all labels.
+ * <p>
+ * Posting lists are stored as sorted primitive int arrays, in an open
+ * addressing hash table with primitive long keys, so that neither the
+ * trigrams nor the table entries are boxed.
+ */
+class ComboBoxNGramIndex implements Serializable {
+
+    /**
+     * Length of the indexed character sequences
+     */
+    static final int GRAM_LENGTH = 3;
+
+    private static final int[] NO_POSITIONS = new int[0];
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String[] labels;
+    // Trigrams plus one, so that zero marks a free slot, and their posting
+    // lists at the same index. The length is a power of two and the table is
+    // at most half full.
+    private long[] keys;
+    private int[][] postings;
+    private int gramCount;
+
+    /**
+     * Builds the index for the labels
+     *
+     * @param labels
+     *            the normalized labels, indexed by their position
+     */
+    ComboBoxNGramIndex(String[] labels) {
+        this.labels = labels;
+        keys = new long[INITIAL_CAPACITY];
+        postings = new int[INITIAL_CAPACITY][];
+
+        // Number of positions in each posting list while building
+        int[] sizes = new int[INITIAL_CAPACITY];
+        for (int position = 0; position < labels.length; position++) {
+            String label = labels[position];
+            for (int i = 0; i + GRAM_LENGTH <= label.length(); i++) {
+                long key = gram(label, i) + 1;
+                int slot = slot(key);
+                if (keys[slot] == 0) {
+                    keys[slot] = key;
+                    postings[slot] = new int[4];
+                    if (++gramCount * 2 > keys.length) {
+                        sizes = grow(sizes);
+                        slot = slot(key);
+                    }
+                }
+                int size = sizes[slot];
+                // The same trigram can occur multiple times in one label
+                if (size > 0 && postings[slot][size - 1] == position) {
+                    continue;
+                }
+                if (size == postings[slot].length) {
+                    postings[slot] = Arrays.copyOf(postings[slot], size * 2);
+                }
+                postings[slot][size] = position;
+                sizes[slot] = size + 1;
+            }
+        }
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0 && sizes[slot] < postings[slot].length) {
+                postings[slot] = Arrays.copyOf(postings[slot], sizes[slot]);
+            }
+        }
+    }
+
+    /**
+     * Finds the positions of all labels that contain the filter text.
+     *
+     * @param filter
+     *            the normalized filter text, at least {@link #GRAM_LENGTH}
+     *            characters long
+     * @return the positions of matching labels in ascending order
+     */
+    int[] search(String filter) {
+        if (filter.length() < GRAM_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Filter must be at least " + GRAM_LENGTH
+                            + " characters long to use the index");
+        }
+
+        int[][] lists = new int[filter.length() - GRAM_LENGTH + 1][];
+        for (int i = 0; i < lists.length; i++) {
+            int slot = slot(gram(filter, i) + 1);
+            if (keys[slot] == 0) {
+                return NO_POSITIONS;
+            }
+            // A trigram that occurs multiple times in the filter yields the
+            // same list, which does not change the intersection
+            lists[i] = postings[slot];
+        }
+        // Start from the shortest list so that intermediate results stay
+        // small
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+
+        int[] candidates = Arrays.copyOf(lists[0], lists[0].length);
+        int candidateCount = candidates.length;
+        for (int i = 1; i < lists.length && candidateCount > 0; i++) {
+            if (lists[i] != lists[i - 1]) {
+                candidateCount = retainAll(candidates, candidateCount,
+                        lists[i]);
+            }
+        }
+
+        // Having all the trigrams does not guarantee that the label contains
+        // the filter as a whole
+        int matchCount = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            int position = candidates[i];
+            if (labels[position].contains(filter)) {
+                candidates[matchCount++] = position;
+            }
+        }
+        return matchCount == candidates.length ? candidates
+                : Arrays.copyOf(candidates, matchCount);
+    }
+
+    /**
+     * Gets the slot of a key in the table, which is either the slot that
+     * holds the key, or the free slot where it would be added
+     */
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the capacity of the table, and returns the building sizes of
+     * the posting lists at their new slots
+     */
+    private int[] grow(int[] sizes) {
+        long[] oldKeys = keys;
+        int[][] oldPostings = postings;
+        keys = new long[oldKeys.length * 2];
+        postings = new int[keys.length][];
+        int[] newSizes = new int[keys.length];
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            if (oldKeys[oldSlot] != 0) {
+                int slot = slot(oldKeys[oldSlot]);
+                keys[slot] = oldKeys[oldSlot];
+                postings[slot] = oldPostings[oldSlot];
+                newSizes[slot] = sizes[oldSlot];
+            }
+        }
+        return newSizes;
+    }
+
+    /**
+     * Removes all values from the beginning of the candidates array that are
+     * not in the sorted list, and returns the new number of candidates
+     */
+    private static int retainAll(int[] candidates, int candidateCount,
+            int[] list) {
+        int retained = 0;
+        int from = 0;
+        for (int i = 0; i < candidateCount && from < list.length; i++) {
+            int index = Arrays.binarySearch(list, from, list.length,
+                    candidates[i]);
+            if (index >= 0) {
+                candidates[retained++] = candidates[i];
+                from = index + 1;
+            } else {
+                from = -index - 1;
+            }
+        }
+        return retained;
+    }
+
+    private static long gram(String text, int start) {
+        return ((long) text.charAt(start) << 32)
+                | ((long) text.charAt(start + 1) << 16)
+                | text.charAt(start + 2);
+    }
+}
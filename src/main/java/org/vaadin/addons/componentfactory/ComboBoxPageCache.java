@@ -0,0 +1,195 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.function.SerializableSupplier;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Internal fetch handler that keeps the most recently used pages of items and
+ * item counts per filter text, so that repeated queries, for example when the
+ * user retypes a filter or reopens the dropdown, are served without querying
+ * the data provider again.
+ * <p>
+ * The cache needs to be cleared whenever the items of the data provider might
+ * have changed.
+ *
+ * @param <TItem>
+ *            Type of individual items that are selectable in the combo box
+ */
+class ComboBoxPageCache<TItem>
+        implements ComboBoxDataCommunicator.FetchHandler<TItem> {
+
+    private final ComboBoxDataCommunicator.FetchHandler<TItem> delegate;
+    private final SerializableSupplier<String> filterSupplier;
+    private final SerializableSupplier<Integer> pageSizeSupplier;
+
+    private int maxPages;
+
+    private transient Map<PageKey, List<TItem>> pages;
+    private transient Map<String, Integer> sizes;
+
+    /**
+     * Creates a new page cache
+     *
+     * @param delegate
+     *            the handler that is used for fetching pages that are not in
+     *            the cache
+     * @param filterSupplier
+     *            supplier for the filter text of the current query
+     * @param pageSizeSupplier
+     *            supplier for the page size of the combo box
+     */
+    ComboBoxPageCache(ComboBoxDataCommunicator.FetchHandler<TItem> delegate,
+            SerializableSupplier<String> filterSupplier,
+            SerializableSupplier<Integer> pageSizeSupplier) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.filterSupplier = Objects.requireNonNull(filterSupplier);
+        this.pageSizeSupplier = Objects.requireNonNull(pageSizeSupplier);
+    }
+
+    /**
+     * Sets the maximum number of pages to keep, or 0 to disable caching
+     */
+    void setMaxPages(int maxPages) {
+        if (maxPages < 0) {
+            throw new IllegalArgumentException(
+                    "Maximum number of cached pages cannot be negative.");
+        }
+        this.maxPages = maxPages;
+        clear();
+    }
+
+    /**
+     * Gets the maximum number of pages to keep
+     */
+    int getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * Removes all pages and item counts from the cache
+     */
+    void clear() {
+        pages = null;
+        sizes = null;
+    }
+
+    @Override
+    public Stream<TItem> fetch(int offset, int limit) {
+        int pageSize = pageSizeSupplier.get();
+        if (maxPages == 0 || limit <= 0) {
+            return delegate.fetch(offset, limit);
+        }
+        int firstPage = offset / pageSize;
+        int lastPage = (int) (((long) offset + limit - 1) / pageSize);
+        if (lastPage - firstPage + 1 > maxPages) {
+            // The range would evict itself from the cache
+            return delegate.fetch(offset, limit);
+        }
+
+        initMaps();
+        String filter = filterSupplier.get();
+        List<List<TItem>> rangePages = new ArrayList<>();
+        for (int page = firstPage; page <= lastPage; page++) {
+            List<TItem> items = pages.get(new PageKey(filter, page));
+            if (items == null) {
+                rangePages = null;
+                break;
+            }
+            rangePages.add(items);
+        }
+
+        if (rangePages == null) {
+            // Fetch all pages of the range with one query
+            int rangeStart = firstPage * pageSize;
+            List<TItem> fetched;
+            try (Stream<TItem> stream = delegate.fetch(rangeStart,
+                    (lastPage - firstPage + 1) * pageSize)) {
+                fetched = stream.collect(Collectors.toList());
+            }
+            rangePages = new ArrayList<>();
+            for (int page = firstPage; page <= lastPage; page++) {
+                int from = Math.min((page - firstPage) * pageSize,
+                        fetched.size());
+                int to = Math.min(from + pageSize, fetched.size());
+                List<TItem> items = new ArrayList<>(fetched.subList(from, to));
+                pages.put(new PageKey(filter, page), items);
+                rangePages.add(items);
+            }
+        }
+
+        int skip = offset - firstPage * pageSize;
+        return rangePages.stream().flatMap(List::stream).skip(skip)
+                .limit(limit);
+    }
+
+    @Override
+    public int size() {
+        if (maxPages == 0) {
+            return delegate.size();
+        }
+        initMaps();
+        String filter = filterSupplier.get();
+        Integer size = sizes.get(filter);
+        if (size == null) {
+            size = delegate.size();
+            sizes.put(filter, size);
+        }
+        return size;
+    }
+
+    private void initMaps() {
+        if (pages == null) {
+            pages = new LinkedHashMap<PageKey, List<TItem>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<PageKey, List<TItem>> eldest) {
+                    return size() > maxPages;
+                }
+            };
+            sizes = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Integer> eldest) {
+                    return size() > maxPages;
+                }
+            };
+        }
+    }
+
+    /**
+     * Identifies a page of items for a filter text
+     */
+    private static final class PageKey {
+        private final String filter;
+        private final int page;
+
+        private PageKey(String filter, int page) {
+            this.filter = filter;
+            this.page = page;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PageKey)) {
+                return false;
+            }
+            PageKey other = (PageKey) obj;
+            return page == other.page && filter.equals(other.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * filter.hashCode() + page;
+        }
+    }
+}
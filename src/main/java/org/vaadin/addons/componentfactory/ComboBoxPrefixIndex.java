@@ -0,0 +1,91 @@
+package org.vaadin.addons.componentfactory;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Internal index that keeps the positions of item labels sorted by label, so
+ * that the labels starting with a prefix can be found with a binary search,
+ * without scanning all labels.
+ */
+class ComboBoxPrefixIndex implements Serializable {
+
+    private final String[] labels;
+    private final int[] sortedPositions;
+
+    /**
+     * Builds the index for the labels
+     *
+     * @param labels
+     *            the normalized labels, indexed by their position
+     */
+    ComboBoxPrefixIndex(String[] labels) {
+        this.labels = labels;
+
+        Integer[] positions = new Integer[labels.length];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i;
+        }
+        // The sort is stable, so equal labels stay in their original order
+        Arrays.sort(positions, (a, b) -> labels[a].compareTo(labels[b]));
+
+        sortedPositions = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            sortedPositions[i] = positions[i];
+        }
+    }
+
+    /**
+     * Finds the positions of all labels that start with the prefix.
+     *
+     * @param prefix
+     *            the normalized prefix
+     * @return the positions of matching labels in ascending order
+     */
+    int[] search(String prefix) {
+        int from = lowerBound(prefix);
+        int to = endOfPrefix(prefix, from);
+
+        int[] positions = Arrays.copyOfRange(sortedPositions, from, to);
+        // Keep the order of the data provider
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    /**
+     * Finds the first index in the sorted positions where the label is not
+     * less than the prefix
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = sortedPositions.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (labels[sortedPositions[middle]].compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the first index after the lower bound where the label does not
+     * start with the prefix. The labels starting with the prefix are
+     * contiguous in the sorted order, directly after the lower bound.
+     */
+    private int endOfPrefix(String prefix, int lowerBound) {
+        int low = lowerBound;
+        int high = sortedPositions.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (labels[sortedPositions[middle]].startsWith(prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,396 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.function.SerializableConsumer;
+import com.vaadin.flow.function.SerializableRunnable;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Decides which item ranges requested by the client-side connector of a combo
+ * box are passed on to the data communicator, and counts the decisions.
+ * <p>
+ * A request is
+ * <ul>
+ * <li>answered as a duplicate, if it asks for the same range with the same
+ * filter as the last request that was passed on, and the component has not
+ * been reset since, in which case the range that was passed on is passed on
+ * again, which the data communicator answers without fetching any items,</li>
+ * <li>coalesced, if it arrives in the same round trip as the previous request
+ * with the same filter and overlaps or touches its range, in which case the
+ * union of both ranges is passed on,</li>
+ * <li>throttled, if more requests per second than allowed with
+ * {@link AbstractComboBox#setMaxRequestsPerSecond(int)} have been passed on
+ * already, in which case it is dropped, and the client is asked to send its
+ * latest request again once the next request is allowed,</li>
+ * <li>clamped, if it asks for more items than allowed with
+ * {@link AbstractComboBox#setMaxRequestedRangeLength(int)}, in which case
+ * only the allowed number of items from the start of the range are passed
+ * on.</li>
+ * </ul>
+ * The items that are sent at once for filtering in the client-side are never
+ * clamped, as the client-side filter would otherwise only see a part of
+ * them.
+ * Items that the connector prefetches ahead of the scrolling direction have a
+ * lower priority than the items that are needed right away: they are left out
+ * when less than half of the allowed requests per second are left, and they
+ * are the first to be cut off when a range is clamped.
+ * <p>
+ * The counters are kept per component instance and are not synchronized, as
+ * they are only updated while holding the session lock.
+ */
+public final class ComboBoxRequestGovernor implements Serializable {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLISECOND = 1_000_000L;
+
+    private final SerializableConsumer<SerializableRunnable> beforeClientResponse;
+    private final SerializableConsumer<Integer> retryAfter;
+
+    private int maxRequestsPerSecond;
+    private int maxRangeLength;
+
+    // The last request as received, and as passed on
+    private Request lastReceived;
+    private Request lastRequest;
+    private boolean inRoundTrip;
+    // When the client has been asked to send its latest request again
+    private long retryTime;
+    private boolean retryRequested;
+
+    // Token bucket for the request rate, refilled continuously
+    private double tokens;
+    private long lastRefill;
+
+    private long acceptedCount;
+    private long duplicateCount;
+    private long coalescedCount;
+    private long throttledCount;
+    private long clampedCount;
+    private long prefetchDroppedCount;
+
+    /**
+     * Creates a new governor
+     *
+     * @param beforeClientResponse
+     *            runs a command before the response of the current round trip
+     *            is sent to the client
+     * @param retryAfter
+     *            asks the client to send its latest request again after the
+     *            given number of milliseconds
+     */
+    ComboBoxRequestGovernor(
+            SerializableConsumer<SerializableRunnable> beforeClientResponse,
+            SerializableConsumer<Integer> retryAfter) {
+        this.beforeClientResponse = Objects
+                .requireNonNull(beforeClientResponse);
+        this.retryAfter = Objects.requireNonNull(retryAfter);
+    }
+
+    /**
+     * Sets the maximum number of requests per second, or 0 for no limit
+     */
+    void setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+        if (maxRequestsPerSecond < 0) {
+            throw new IllegalArgumentException(
+                    "Maximum number of requests per second cannot be negative.");
+        }
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        tokens = maxRequestsPerSecond;
+        lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Gets the maximum number of requests per second, or 0 for no limit
+     */
+    int getMaxRequestsPerSecond() {
+        return maxRequestsPerSecond;
+    }
+
+    /**
+     * Sets the maximum number of items per request, or 0 for no limit
+     */
+    void setMaxRangeLength(int maxRangeLength) {
+        if (maxRangeLength < 0) {
+            throw new IllegalArgumentException(
+                    "Maximum range length cannot be negative.");
+        }
+        this.maxRangeLength = maxRangeLength;
+    }
+
+    /**
+     * Gets the maximum number of items per request, or 0 for no limit
+     */
+    int getMaxRangeLength() {
+        return maxRangeLength;
+    }
+
+    /**
+     * Decides what to do with a range requested by the client.
+     *
+     * @param start
+     *            the index of the first requested item, including prefetched
+     *            items
+     * @param length
+     *            the number of requested items, including prefetched items
+     * @param prefetch
+     *            the number of prefetched items at the end of the range, or if
+     *            negative, at the start of the range
+     * @param filter
+     *            the filter text
+     * @param unclampedLength
+     *            the number of items that can be requested even if the
+     *            maximum range length is shorter, such as the client-side
+     *            filter threshold when filtering in the client-side, or 0
+     * @return the range to pass on to the data communicator, or {@code null}
+     *         if the request should be dropped
+     */
+    Request onRequest(int start, int length, int prefetch, String filter,
+            int unclampedLength) {
+        Request request = new Request(start, length, filter,
+                Math.max(-length, Math.min(prefetch, length)));
+        if (request.equals(lastReceived) || request.equals(lastRequest)) {
+            // The range has not changed, but the client still waits for the
+            // confirmation of an update
+            duplicateCount++;
+            return lastRequest;
+        }
+
+        if (inRoundTrip && lastRequest != null
+                && lastRequest.touches(request)) {
+            coalescedCount++;
+            return pass(request, lastRequest.union(request), unclampedLength);
+        }
+
+        if (!tryAcquire()) {
+            throttledCount++;
+            requestRetry();
+            return null;
+        }
+        acceptedCount++;
+        if (!inRoundTrip) {
+            inRoundTrip = true;
+            beforeClientResponse.accept(() -> inRoundTrip = false);
+        }
+        if (request.prefetch != 0 && !hasSpareCapacity()) {
+            prefetchDroppedCount++;
+            return pass(request, request.withoutPrefetch(),
+                    unclampedLength);
+        }
+        return pass(request, request, unclampedLength);
+    }
+
+    private Request pass(Request received, Request request,
+            int unclampedLength) {
+        int maxLength = Math.max(maxRangeLength, unclampedLength);
+        if (maxRangeLength > 0 && request.length > maxLength) {
+            clampedCount++;
+            request = request.clamp(maxLength);
+        }
+        lastReceived = received;
+        lastRequest = request;
+        return request;
+    }
+
+    private boolean tryAcquire() {
+        if (maxRequestsPerSecond == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(maxRequestsPerSecond, tokens
+                + (double) (now - lastRefill) * maxRequestsPerSecond
+                        / NANOS_PER_SECOND);
+        lastRefill = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Asks the client to send its latest request again once a request is
+     * allowed, unless it has already been asked to do so
+     */
+    private void requestRetry() {
+        long now = System.nanoTime();
+        if (retryRequested && now - retryTime < 0) {
+            return;
+        }
+        long delayNanos = (long) Math.ceil(
+                (1 - tokens) * NANOS_PER_SECOND / maxRequestsPerSecond);
+        retryRequested = true;
+        retryTime = now + delayNanos;
+        retryAfter.accept((int) Math.max(1,
+                Math.ceil(delayNanos / (double) NANOS_PER_MILLISECOND)));
+    }
+
+    private boolean hasSpareCapacity() {
+        return maxRequestsPerSecond == 0
+                || tokens >= maxRequestsPerSecond / 2.0;
+    }
+
+    /**
+     * Forgets the last request, so that the same range is passed on again.
+     * Needs to be called whenever the data communicator or the client-side
+     * connector is reset.
+     */
+    void reset() {
+        lastReceived = null;
+        lastRequest = null;
+    }
+
+    /**
+     * Gets the number of requests that were passed on to the data
+     * communicator, not counting coalesced requests.
+     *
+     * @return the number of accepted requests
+     */
+    public long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    /**
+     * Gets the number of requests that were answered without fetching items,
+     * because the same range had already been passed on.
+     *
+     * @return the number of duplicate requests
+     */
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Gets the number of requests that were merged with the previous request
+     * of the same round trip.
+     *
+     * @return the number of coalesced requests
+     */
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * Gets the number of requests that were dropped because the maximum
+     * number of requests per second was exceeded.
+     *
+     * @return the number of throttled requests
+     */
+    public long getThrottledCount() {
+        return throttledCount;
+    }
+
+    /**
+     * Gets the number of requests, accepted or coalesced, whose range was
+     * shortened to the maximum range length.
+     *
+     * @return the number of clamped requests
+     */
+    public long getClampedCount() {
+        return clampedCount;
+    }
+
+    /**
+     * Gets the number of accepted requests whose prefetched items were left
+     * out because the request rate was close to the limit.
+     *
+     * @return the number of requests without the prefetched items
+     */
+    public long getPrefetchDroppedCount() {
+        return prefetchDroppedCount;
+    }
+
+    /**
+     * Sets all counters to zero.
+     */
+    public void resetCounts() {
+        acceptedCount = 0;
+        duplicateCount = 0;
+        coalescedCount = 0;
+        throttledCount = 0;
+        clampedCount = 0;
+        prefetchDroppedCount = 0;
+    }
+
+    /**
+     * Range of items requested for a filter text
+     */
+    static final class Request implements Serializable {
+        private final int start;
+        private final int length;
+        private final String filter;
+        // Prefetched items at the end of the range, or at the start if
+        // negative
+        private final int prefetch;
+
+        private Request(int start, int length, String filter, int prefetch) {
+            this.start = start;
+            this.length = length;
+            this.filter = filter;
+            this.prefetch = prefetch;
+        }
+
+        int getStart() {
+            return start;
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        String getFilter() {
+            return filter;
+        }
+
+        private boolean touches(Request other) {
+            return Objects.equals(filter, other.filter)
+                    && other.start <= (long) start + length
+                    && start <= (long) other.start + other.length;
+        }
+
+        private Request union(Request other) {
+            int unionStart = Math.min(start, other.start);
+            long unionEnd = Math.max((long) start + length,
+                    (long) other.start + other.length);
+            return new Request(unionStart,
+                    (int) Math.min(unionEnd - unionStart, Integer.MAX_VALUE),
+                    filter, 0);
+        }
+
+        private Request withoutPrefetch() {
+            return new Request(prefetch < 0 ? start - prefetch : start,
+                    length - Math.abs(prefetch), filter, 0);
+        }
+
+        private Request clamp(int maxLength) {
+            // Cut off prefetched items first, then items from the end
+            int excess = length - maxLength;
+            int cutPrefetch = Math.min(excess, Math.abs(prefetch));
+            if (prefetch < 0) {
+                return new Request(start + cutPrefetch, maxLength, filter,
+                        prefetch + cutPrefetch);
+            }
+            return new Request(start, maxLength, filter,
+                    Math.max(prefetch - excess, 0));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Request)) {
+                return false;
+            }
+            Request other = (Request) obj;
+            return start == other.start && length == other.length
+                    && prefetch == other.prefetch
+                    && Objects.equals(filter, other.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(start, length, filter, prefetch);
+        }
+    }
+}
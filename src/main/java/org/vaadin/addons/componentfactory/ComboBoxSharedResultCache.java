@@ -0,0 +1,268 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.function.SerializableSupplier;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Cache of data provider results that can be shared by combo boxes in all
+ * sessions of an application, so that identical queries for the same data set
+ * run only once within the time to live of the cache.
+ * <p>
+ * Results are identified by a data set id, which is chosen by the application
+ * and passed to {@link AbstractComboBox#setSharedResultCache}, together with
+ * the filter text, filter mode, locale, offset and limit of the query. All
+ * combo boxes using the same data set id must therefore show the same items
+ * for the same filter, regardless of the user, which includes using the same
+ * item label generator. Only items and item counts are cached, the keys that
+ * identify items in the browser are still generated by each combo box.
+ * <p>
+ * The cache is split into independently locked stripes, so that concurrent
+ * requests rarely wait for each other. Entries are evicted when they are older
+ * than the time to live, or when a stripe is full, in which case the least
+ * recently used entry of the stripe is evicted. Use {@link #invalidate(String)}
+ * or {@link #invalidateAll()} when the backing data changes, or
+ * {@link #invalidate(String, Object)} when a single item changes.
+ * <p>
+ * An instance should be kept in an application scoped place, for example a
+ * static field or a singleton bean. The cached entries are not serialized.
+ */
+public class ComboBoxSharedResultCache implements Serializable {
+
+    private static final int STRIPE_COUNT = 16;
+
+    private final int maxEntriesPerStripe;
+    private final long timeToLiveNanos;
+
+    private transient volatile Stripe[] stripes;
+
+    /**
+     * Creates a new shared result cache
+     *
+     * @param maxEntries
+     *            the maximum number of cached results, should be greater than
+     *            zero
+     * @param timeToLive
+     *            how long a result is used after it has been fetched from the
+     *            data provider, not {@code null}
+     */
+    public ComboBoxSharedResultCache(int maxEntries, Duration timeToLive) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException(
+                    "Maximum number of entries should be greater than zero.");
+        }
+        Objects.requireNonNull(timeToLive, "Time to live cannot be null");
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException(
+                    "Time to live should be positive.");
+        }
+        maxEntriesPerStripe = (maxEntries + STRIPE_COUNT - 1) / STRIPE_COUNT;
+        timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    /**
+     * Removes all cached results of a data set.
+     *
+     * @param datasetId
+     *            the id of the data set, not {@code null}
+     */
+    public void invalidate(String datasetId) {
+        Objects.requireNonNull(datasetId, "Data set id cannot be null");
+        for (Stripe stripe : getStripes()) {
+            synchronized (stripe) {
+                stripe.keySet()
+                        .removeIf(key -> key.datasetId.equals(datasetId));
+            }
+        }
+    }
+
+    /**
+     * Removes the cached results of a data set that may be affected by a
+     * change of one item: the results that contain the item, and all results
+     * of non-empty filters, as the item may now match them or not. Results of
+     * the unfiltered data set that do not contain the item are kept.
+     *
+     * @param datasetId
+     *            the id of the data set, not {@code null}
+     * @param item
+     *            the changed item, compared to the cached items with
+     *            {@link Object#equals(Object)}
+     */
+    public void invalidate(String datasetId, Object item) {
+        invalidate(datasetId, item, Function.identity());
+    }
+
+    /**
+     * Removes the cached results of a data set that may be affected by a
+     * change of one item, comparing the items by the ids from the id getter
+     */
+    void invalidate(String datasetId, Object itemId,
+            Function<Object, Object> idGetter) {
+        Objects.requireNonNull(datasetId, "Data set id cannot be null");
+        for (Stripe stripe : getStripes()) {
+            synchronized (stripe) {
+                stripe.entrySet().removeIf(entry -> {
+                    Key key = entry.getKey();
+                    if (!key.datasetId.equals(datasetId)) {
+                        return false;
+                    }
+                    if (!key.filter.isEmpty()) {
+                        return true;
+                    }
+                    Object value = entry.getValue().value;
+                    return value instanceof List && ((List<?>) value).stream()
+                            .map(idGetter)
+                            .anyMatch(id -> Objects.equals(id, itemId));
+                });
+            }
+        }
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void invalidateAll() {
+        for (Stripe stripe : getStripes()) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the items of a query from the cache, or loads and caches them. The
+     * loader is run without holding any lock, so concurrent requests for the
+     * same query may both load it.
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> getItems(String datasetId, String filter,
+            ComboBoxFilterMode filterMode, Locale locale, int offset,
+            int limit, SerializableSupplier<List<T>> loader) {
+        return (List<T>) get(
+                new Key(datasetId, filter, filterMode, locale, offset, limit),
+                () -> Collections.unmodifiableList(loader.get()));
+    }
+
+    /**
+     * Gets the item count of a query from the cache, or loads and caches it
+     */
+    int getSize(String datasetId, String filter, ComboBoxFilterMode filterMode,
+            Locale locale, SerializableSupplier<Integer> loader) {
+        return (Integer) get(
+                new Key(datasetId, filter, filterMode, locale, -1, -1),
+                loader::get);
+    }
+
+    private Object get(Key key, SerializableSupplier<Object> loader) {
+        Stripe stripe = getStripes()[Math.floorMod(key.hashCode(),
+                STRIPE_COUNT)];
+        long now = System.nanoTime();
+        synchronized (stripe) {
+            Entry entry = stripe.get(key);
+            if (entry != null && now - entry.created < timeToLiveNanos) {
+                return entry.value;
+            }
+        }
+
+        Object value = loader.get();
+        synchronized (stripe) {
+            stripe.put(key, new Entry(value, now));
+        }
+        return value;
+    }
+
+    private Stripe[] getStripes() {
+        Stripe[] result = stripes;
+        if (result == null) {
+            synchronized (this) {
+                result = stripes;
+                if (result == null) {
+                    result = new Stripe[STRIPE_COUNT];
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = new Stripe(maxEntriesPerStripe);
+                    }
+                    stripes = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Least recently used entries of one lock stripe
+     */
+    private static final class Stripe extends LinkedHashMap<Key, Entry> {
+        private final int maxEntries;
+
+        private Stripe(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<Key, ComboBoxSharedResultCache.Entry> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long created;
+
+        private Entry(Object value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+
+    private static final class Key {
+        private final String datasetId;
+        private final String filter;
+        private final ComboBoxFilterMode filterMode;
+        private final Locale locale;
+        private final int offset;
+        private final int limit;
+
+        private Key(String datasetId, String filter,
+                ComboBoxFilterMode filterMode, Locale locale, int offset,
+                int limit) {
+            this.datasetId = datasetId;
+            this.filter = filter;
+            this.filterMode = filterMode;
+            this.locale = locale;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return offset == other.offset && limit == other.limit
+                    && datasetId.equals(other.datasetId)
+                    && filter.equals(other.filter)
+                    && filterMode == other.filterMode
+                    && Objects.equals(locale, other.locale);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(datasetId, filter, filterMode, locale, offset,
+                    limit);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.data.provider.DataKeyMapper;
+import com.vaadin.flow.function.SerializablePredicate;
+import com.vaadin.flow.function.ValueProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Key mapper that derives the key of an item from its identifier in the data
+ * provider, so that an item keeps the same key across filters and resets of
+ * the data communicator. Like {@link ComboBoxKeyMapper}, it does not remove
+ * the key of an item as long as it is selected.
+ * <p>
+ * The key is a SHA-256 hash of the identifier, salted with a random value of
+ * the key mapper, so keys do not reveal the identifiers and cannot be
+ * predicted by the client. The hash covers the whole identifier: its string
+ * representation for strings, numbers and UUIDs, its serialized form for other
+ * serializable identifiers, and its class and string representation
+ * otherwise. Identifiers that are not equal but hash to the same key while
+ * both are mapped, such as two objects with the same fields that do not
+ * override {@link Object#equals(Object)}, get keys with a counter appended.
+ * These keys are reserved for the lifetime of the key mapper, so a key is
+ * never given to another identifier. The null item has a key that no hash
+ * can produce.
+ *
+ * @param <TItem>
+ *            The type of the item selectable in the combo box
+ */
+class ComboBoxStableKeyMapper<TItem> implements DataKeyMapper<TItem> {
+
+    // Shorter than a hash, so it cannot be the key of an identifier
+    private static final String NULL_KEY = "null";
+    private static final SecureRandom SALTS = new SecureRandom();
+    // Bytes of the hash used for a key, enough to never collide in practice
+    private static final int KEY_BYTES = 16;
+    // Identifier types whose string representation tells all values apart
+    private static final List<Class<?>> STRING_TYPES = Arrays.asList(
+            String.class, Long.class, Integer.class, Short.class, Byte.class,
+            Character.class, Boolean.class, Double.class, Float.class,
+            BigInteger.class, BigDecimal.class, UUID.class);
+
+    private final SerializablePredicate<TItem> isSelected;
+    private final byte[] salt = new byte[16];
+    private transient MessageDigest digest;
+
+    private ValueProvider<TItem, Object> identifierGetter = item -> item;
+
+    private final Map<Object, String> keysById = new HashMap<>();
+    private final Map<String, TItem> itemsByKey = new HashMap<>();
+    private final Set<String> keysMarkedForRemoval = new HashSet<>();
+
+    // Identifiers whose hash was also the hash of another identifier, with
+    // their keys, and the hashes that are not used as keys anymore because of
+    // that. Kept when keys are removed, so that the keys are not reused.
+    private final Map<Object, String> reservedKeys = new HashMap<>();
+    private final Set<String> collidedHashes = new HashSet<>();
+    private long collisionCounter;
+
+    /**
+     * Creates a new key mapper
+     *
+     * @param isSelected
+     *            tells whether an item is currently selected
+     */
+    ComboBoxStableKeyMapper(SerializablePredicate<TItem> isSelected) {
+        this.isSelected = Objects.requireNonNull(isSelected);
+        SALTS.nextBytes(salt);
+    }
+
+    @Override
+    public String key(TItem item) {
+        if (item == null) {
+            return NULL_KEY;
+        }
+        Object id = getId(item);
+        String key = keysById.get(id);
+        if (key == null) {
+            key = encode(id);
+            itemsByKey.put(key, item);
+            keysById.put(id, key);
+        }
+        // Unmark item when it becomes active again
+        keysMarkedForRemoval.remove(key);
+        return key;
+    }
+
+    @Override
+    public boolean has(TItem item) {
+        return item != null && keysById.containsKey(getId(item));
+    }
+
+    @Override
+    public TItem get(String key) {
+        return key == null ? null : itemsByKey.get(key);
+    }
+
+    @Override
+    public void remove(TItem item) {
+        if (item == null) {
+            return;
+        }
+        Object id = getId(item);
+        String key = keysById.get(id);
+        if (key == null) {
+            return;
+        }
+        if (isSelected.test(item)) {
+            // Mark item for removal as soon as it is not selected anymore
+            keysMarkedForRemoval.add(key);
+        } else {
+            itemsByKey.remove(key);
+            keysById.remove(id);
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        keysById.clear();
+        itemsByKey.clear();
+        keysMarkedForRemoval.clear();
+    }
+
+    @Override
+    public void refresh(TItem item) {
+        if (item == null) {
+            return;
+        }
+        String key = keysById.get(getId(item));
+        if (key != null) {
+            itemsByKey.put(key, item);
+        }
+    }
+
+    @Override
+    public void setIdentifierGetter(
+            ValueProvider<TItem, Object> identifierGetter) {
+        if (this.identifierGetter != identifierGetter) {
+            this.identifierGetter = identifierGetter;
+            // Keys of the old identifiers cannot be looked up anymore
+            removeAll();
+        }
+    }
+
+    /**
+     * Removes the keys of items that were kept because they were selected,
+     * and are not selected anymore
+     */
+    void purge() {
+        Iterator<String> iterator = keysMarkedForRemoval.iterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            TItem item = itemsByKey.get(key);
+            if (!isSelected.test(item)) {
+                itemsByKey.remove(key);
+                keysById.remove(getId(item));
+                iterator.remove();
+            }
+        }
+    }
+
+    private Object getId(TItem item) {
+        return Objects.requireNonNull(identifierGetter.apply(item),
+                "Identifier of an item cannot be null");
+    }
+
+    /**
+     * Encodes a new key for an identifier that is not mapped yet
+     */
+    private String encode(Object id) {
+        String key = reservedKeys.get(id);
+        if (key != null) {
+            return key;
+        }
+        String hash = hash(id);
+        TItem owner = itemsByKey.get(hash);
+        if (owner == null && !collidedHashes.contains(hash)) {
+            return hash;
+        }
+        // Another identifier has the same hash. The current owner keeps the
+        // hash as its key, and the new identifier gets a numbered key, both
+        // for good. The hash is not given to any other identifier anymore.
+        if (owner != null) {
+            reservedKeys.put(getId(owner), hash);
+        }
+        collidedHashes.add(hash);
+        key = hash + '.' + ++collisionCounter;
+        reservedKeys.put(id, key);
+        return key;
+    }
+
+    private String hash(Object id) {
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform supports SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+        digest.update(salt);
+        digest.update(serialize(id));
+        byte[] hash = Arrays.copyOf(digest.digest(), KEY_BYTES);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    private static byte[] serialize(Object id) {
+        if (!STRING_TYPES.contains(id.getClass())
+                && id instanceof Serializable) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(id);
+                out.flush();
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                // A field is not serializable, use the string representation
+            }
+        }
+        return (id.getClass().getName() + ':' + id)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -16,7 +16,6 @@
 package org.vaadin.addons.componentfactory;
 
 import com.vaadin.flow.component.Component;
-import com.vaadin.flow.internal.StateNode;
 
 /**
  * Utility class for ComboBox Flow component to disable client side validation.
@@ -29,48 +28,13 @@ final class FieldValidationUtil {
         // utility class should not be instantiated
     }
 
+    /**
+     * Makes the web component keep the validation state set from the server,
+     * instead of validating in the browser. The mode is set as a property in
+     * the initial state of the element, so it only needs to be called once,
+     * from the constructor of the component.
+     */
     static void disableClientValidation(Component component) {
-        // Since this method should be called for every time when the component
-        // is attached to the UI, lets check that it is actually so
-        if (!component.isAttached()) {
-            throw new IllegalStateException(String.format(
-                    "Component %s is not attached. Client side "
-                            + "validation can only be disabled for a component "
-                            + "when it has been attached to the UI and because "
-                            + "it should be called again once the component is "
-                            + "removed/added, you should call this method from "
-                            + "the onAttach() method of the component.",
-                    component.toString()));
-        }
-        // Wait until the response is being written as the validation state
-        // should not change after that
-        final StateNode componentNode = component.getElement().getNode();
-        componentNode.runWhenAttached(ui -> ui.getInternals().getStateTree()
-                .beforeClientResponse(componentNode,
-                        executionContext -> overrideClientValidation(
-                                component)));
+        component.getElement().setProperty("_serverValidation", true);
     }
-
-    private static void overrideClientValidation(Component component) {
-        // Overwrite client validation method to simply return validation state
-        // set from server
-        StringBuilder expression = new StringBuilder(
-                "this.validate = function () {return !this.invalid;};");
-
-        boolean isInvalid = false;
-        if (component instanceof ComboBox) {
-            isInvalid = ((ComboBox) component).isInvalid();
-        } else if (component instanceof AbstractComboBox) {
-            isInvalid = ((AbstractComboBox) component).isInvalid();            
-        }
-        if (isInvalid) {
-            /*
-             * By default the invalid flag is set to false. Workaround the case
-             * where the client side validation overrides the invalid state
-             * before the validation function itself is overridden above.
-             */
-            expression.append("this.invalid = true;");
-        }
-        component.getElement().executeJs(expression.toString());
-    }
-}
\ No newline at end of file
+}
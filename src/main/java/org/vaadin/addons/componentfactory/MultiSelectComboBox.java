@@ -34,11 +34,11 @@ import elemental.json.JsonArray;
 import elemental.json.JsonObject;
 import elemental.json.JsonType;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -322,7 +322,7 @@ public class MultiSelectComboBox<TItem>
      */
     @SafeVarargs
     public final void setValue(TItem... items) {
-        Set<TItem> value = new LinkedHashSet<>(List.of(items));
+        Set<TItem> value = new LinkedHashSet<>(Arrays.asList(items));
         setValue(value);
     }
 
@@ -428,9 +428,9 @@ public class MultiSelectComboBox<TItem>
 
         // Assign new I18N object to WC, by merging the existing
         // WC I18N, and the values from the new I18n instance,
-        // into an empty object
-        getElement().executeJs("this.i18n = Object.assign({}, this.i18n, $0);",
-                i18nJson);
+        // into an empty object. Sent together with the setup of the other
+        // combo boxes of the UI.
+        ComboBoxClientBatch.setI18n(this, i18nJson);
     }
 
     private void removeNullValuesFromJsonObject(JsonObject jsonObject) {
@@ -8,6 +8,27 @@ import { ComboBoxPlaceholder } from './vcf-combo-box-placeholder.js';
   };
 
   window.Vaadin.Flow.comboBoxConnector = {
+    /**
+     * Sets up the combo boxes of a server response at once.
+     *
+     * @param configs what to set up for each combo box: whether to initialize
+     *   the connector, and the index of the i18n settings to merge
+     * @param i18ns i18n settings shared by the combo boxes
+     * @param comboBoxes the combo boxes, in the order of the configs
+     */
+    initBatch: (configs, i18ns, comboBoxes) =>
+      tryCatchWrapper(function (configs, i18ns, comboBoxes) {
+        comboBoxes.forEach((comboBox, index) => {
+          const config = configs[index];
+          if (config.connector) {
+            window.Vaadin.Flow.comboBoxConnector.initLazy(comboBox);
+          }
+          if (config.i18n !== undefined) {
+            comboBox.i18n = Object.assign({}, comboBox.i18n, i18ns[config.i18n]);
+          }
+        });
+      })(configs, i18ns, comboBoxes),
+
     initLazy: (comboBox) =>
       tryCatchWrapper(function (comboBox) {
         // Check whether the connector was already initialized for the ComboBox
@@ -27,29 +48,246 @@ import { ComboBoxPlaceholder } from './vcf-combo-box-placeholder.js';
           // Private variables
           let lastFilterSentToServer = '';
           let dataCommunicatorResetNeeded = false;
+          // Start time of the oldest unanswered request, and the smoothed
+          // round-trip time of the answered ones
+          let requestStartTime;
+          let roundTripTime;
+          // The latest request, which is sent again when the server has
+          // throttled it
+          let lastRequest;
+          let retryTimeout;
 
           // Public methods
           const needsDataCommunicatorReset = () => (dataCommunicatorResetNeeded = true);
           const getLastFilterSentToServer = () => lastFilterSentToServer;
-          const requestData = (startIndex, endIndex, params) => {
+          const getRoundTripTime = () => roundTripTime;
+          const requestData = (startIndex, endIndex, params, prefetch = 0) => {
             const count = endIndex - startIndex;
             const filter = params.filter;
+            lastRequest = { startIndex, endIndex, params, prefetch };
 
-            comboBox.$server.setRequestedRange(startIndex, count, filter);
+            comboBox.$server.setRequestedRange(startIndex, count, filter, prefetch);
             lastFilterSentToServer = filter;
+            if (requestStartTime === undefined) {
+              requestStartTime = performance.now();
+            }
             if (dataCommunicatorResetNeeded) {
               comboBox.$server.resetDataCommunicator();
               dataCommunicatorResetNeeded = false;
             }
           };
+          const requestAnswered = () => {
+            if (requestStartTime === undefined) {
+              return;
+            }
+            const sample = performance.now() - requestStartTime;
+            requestStartTime = undefined;
+            roundTripTime = roundTripTime === undefined ? sample : 0.7 * roundTripTime + 0.3 * sample;
+          };
+
+          const retryAfter = (delay) => {
+            clearTimeout(retryTimeout);
+            retryTimeout = setTimeout(() => {
+              retryTimeout = undefined;
+              if (lastRequest) {
+                requestData(lastRequest.startIndex, lastRequest.endIndex, lastRequest.params, lastRequest.prefetch);
+              }
+            }, delay);
+          };
 
           return {
             needsDataCommunicatorReset,
+            retryAfter,
             getLastFilterSentToServer,
-            requestData
+            getRoundTripTime,
+            requestData,
+            requestAnswered
           };
         })();
 
+        // The time to wait for the user to stop typing before requesting
+        // items for a new filter. In adaptive mode this follows the measured
+        // round-trip time, within the configured bounds.
+        const getFilterDebounceTime = () => {
+          const fixedTime = comboBox._filterDebounceTime !== undefined ? comboBox._filterDebounceTime : 500;
+          if (!comboBox._adaptiveFilterDebounce) {
+            return fixedTime;
+          }
+          const min = comboBox._filterDebounceMin || 0;
+          const max = comboBox._filterDebounceMax !== undefined ? comboBox._filterDebounceMax : fixedTime;
+          const roundTripTime = serverFacade.getRoundTripTime();
+          if (roundTripTime === undefined) {
+            return max;
+          }
+          return Math.round(Math.min(Math.max(roundTripTime, min), max));
+        };
+
+        // Items kept for recently used filters when filtering in the
+        // server-side: filter -> { pages, size }, least recently used first.
+        // Only used with stable keys, as generated keys of items that are not
+        // shown anymore are released in the server-side.
+        const filterCache = new Map();
+        const maxPagesPerFilter = 10;
+        let dataVersion;
+
+        const getFilterCacheSize = () => (!comboBox._stableKeys ? 0 : comboBox._filterCacheSize !== undefined ? comboBox._filterCacheSize : 5);
+
+        const getCachedResult = (filter) => {
+          const result = filterCache.get(filter);
+          if (result) {
+            filterCache.delete(filter);
+            filterCache.set(filter, result);
+          }
+          return result;
+        };
+
+        const getOrCreateCachedResult = (filter) => {
+          let result = getCachedResult(filter);
+          if (!result) {
+            result = { pages: new Map(), size: undefined };
+            filterCache.set(filter, result);
+            while (filterCache.size > getFilterCacheSize()) {
+              filterCache.delete(filterCache.keys().next().value);
+            }
+          }
+          return result;
+        };
+
+        const rememberPage = (filter, page, items) => {
+          if (comboBox._clientSideFilter || getFilterCacheSize() <= 0) {
+            return;
+          }
+          const result = getOrCreateCachedResult(filter);
+          result.pages.delete(page);
+          result.pages.set(page, items);
+          while (result.pages.size > maxPagesPerFilter) {
+            result.pages.delete(result.pages.keys().next().value);
+          }
+        };
+
+        const rememberSize = (filter, size) => {
+          if (comboBox._clientSideFilter || getFilterCacheSize() <= 0 || filter === null) {
+            return;
+          }
+          getOrCreateCachedResult(filter).size = size;
+        };
+
+        // Tracking of the requested pages for predicting which pages will be
+        // needed next: the last requested page, when it was requested, and the
+        // smoothed speed in pages per second, negative when scrolling up
+        let lastRequestedPage;
+        let lastPageRequestTime;
+        let pageVelocity = 0;
+
+        const trackPageRequest = (page) => {
+          const now = performance.now();
+          if (lastRequestedPage !== undefined && page !== lastRequestedPage) {
+            const elapsedSeconds = Math.max(now - lastPageRequestTime, 1) / 1000;
+            const sample = (page - lastRequestedPage) / elapsedSeconds;
+            // Follow a change of direction immediately
+            pageVelocity = Math.sign(sample) === Math.sign(pageVelocity) ? 0.5 * pageVelocity + 0.5 * sample : sample;
+          }
+          lastRequestedPage = page;
+          lastPageRequestTime = now;
+        };
+
+        const resetPageTracking = () => {
+          lastRequestedPage = undefined;
+          pageVelocity = 0;
+        };
+
+        // The number of items to request in addition to the active pages, so
+        // that they are cached before they are scrolled into view. Pages are
+        // prefetched in the scrolling direction, as many as are scrolled past
+        // during one round trip, limited by the configured maximum and by the
+        // maximum item count of the active range. Negative values stand for
+        // items before the active pages.
+        const getPrefetchCount = (rangeMin, rangeMax, pageSize, maxRangeCount) => {
+          const maxPages = comboBox._prefetchPages !== undefined ? comboBox._prefetchPages : 2;
+          if (maxPages <= 0 || comboBox._clientSideFilter) {
+            return 0;
+          }
+          const roundTripSeconds = (serverFacade.getRoundTripTime() || 200) / 1000;
+          let pages = Math.ceil(Math.abs(pageVelocity) * roundTripSeconds) + 1;
+          pages = Math.min(pages, maxPages, Math.floor(maxRangeCount / pageSize) - (rangeMax - rangeMin + 1));
+          if (pageVelocity < 0) {
+            pages = Math.min(pages, rangeMin);
+            return pages > 0 ? -pages * pageSize : 0;
+          }
+          if (comboBox.size !== undefined) {
+            const lastPage = Math.ceil(comboBox.size / pageSize) - 1;
+            pages = Math.min(pages, lastPage - rangeMax);
+          }
+          return pages > 0 ? pages * pageSize : 0;
+        };
+
+        // Replaces the items of a page that was shown from the filter cache
+        // with the items sent by the server, which have valid keys
+        const createRefreshCallback = (page, filter) => (items) => {
+          if (!items.length || comboBox.filter !== filter || !comboBox.filteredItems) {
+            return;
+          }
+          const filteredItems = [...comboBox.filteredItems];
+          filteredItems.splice(page * comboBox.pageSize, items.length, ...items);
+          comboBox.filteredItems = filteredItems;
+        };
+
+        // Shows a page kept for the filter right away, and requests it from the
+        // server after the filter debounce, which registers the stable keys of
+        // the kept items in the server-side again
+        const serveCachedPage = (params, callback, cachedResult) => {
+          if (params.filter !== lastFilter) {
+            // Callbacks of the previous filter are not needed anymore
+            clearPageCallbacks();
+            cache = {};
+            lastFilter = params.filter;
+            resetPageTracking();
+          }
+          const size = cachedResult.size !== undefined ? cachedResult.size : comboBox.size;
+          callback(cachedResult.pages.get(params.page), size);
+          pageCallbacks[params.page] = createRefreshCallback(params.page, params.filter);
+
+          comboBox._filterDebouncer = Debouncer.debounce(
+            comboBox._filterDebouncer,
+            timeOut.after(getFilterDebounceTime()),
+            () => {
+              comboBox._filterDebouncer = undefined;
+              if (serverFacade.getLastFilterSentToServer() === params.filter) {
+                // Make the server send the items again even if the range has
+                // not changed
+                serverFacade.needsDataCommunicatorReset();
+              }
+              const activePages = Object.keys(pageCallbacks).map((page) => parseInt(page));
+              if (activePages.length) {
+                const startIndex = params.pageSize * Math.min(...activePages);
+                const endIndex = params.pageSize * (Math.max(...activePages) + 1);
+                serverFacade.requestData(startIndex, endIndex, params);
+              }
+            }
+          );
+        };
+
+        // The largest number of items that are filtered in the client-side
+        const getClientSideFilterThreshold = () => comboBox._clientSideFilterThreshold || comboBox.pageSize;
+
+        // All items received for client-side filtering, which may span
+        // several pages. The same array is returned as long as the pages do
+        // not change, so that the filter worker does not need to get the
+        // labels again.
+        let clientSideItems = [];
+        let clientSideItemPages = [];
+        const getClientSideItems = () => {
+          const pages = [];
+          for (let page = 0; cache[page]; page++) {
+            pages.push(cache[page]);
+          }
+          if (pages.length !== clientSideItemPages.length || pages.some((items, i) => items !== clientSideItemPages[i])) {
+            clientSideItems = pages.length === 1 ? pages[0] : [].concat(...pages);
+            clientSideItemPages = pages;
+          }
+          return clientSideItems;
+        };
+
         const clearPageCallbacks = (pages = Object.keys(pageCallbacks)) => {
           // Flush and empty the existing requests
           pages.forEach((page) => {
@@ -78,7 +316,7 @@ import { ComboBoxPlaceholder } from './vcf-combo-box-placeholder.js';
             // filter based on comboBox.filter. While later we only filter clientside data.
 
             if (cache[0]) {
-              performClientSideFilter(cache[0], params.filter, callback);
+              performClientSideFilter(getClientSideItems(), params.filter, callback);
               return;
             } else {
               // If client side filter is enabled then we need to first ask all data
@@ -86,16 +324,23 @@ import { ComboBoxPlaceholder } from './vcf-combo-box-placeholder.js';
               // input another filter, eg. continue to type, the local cache will be only
               // what was received for the first filter, which may not be the whole
               // data from server (keep in mind that client side filter is enabled only
-              // when the items count does not exceed one page).
+              // when the items count does not exceed the client-side filter threshold).
               params.filter = '';
             }
           }
 
+          const cachedResult = !comboBox._clientSideFilter && getFilterCacheSize() > 0 && filterCache.get(params.filter);
+          if (cachedResult && cachedResult.pages.has(params.page)) {
+            serveCachedPage(params, callback, getCachedResult(params.filter));
+            return;
+          }
+
           const filterChanged = params.filter !== lastFilter;
           if (filterChanged) {
             cache = {};
             lastFilter = params.filter;
-            this._filterDebouncer = Debouncer.debounce(this._filterDebouncer, timeOut.after(500), () => {
+            resetPageTracking();
+            this._filterDebouncer = Debouncer.debounce(this._filterDebouncer, timeOut.after(getFilterDebounceTime()), () => {
               if (serverFacade.getLastFilterSentToServer() === params.filter) {
                 // Fixes the case when the filter changes
                 // to something else and back to the original value
@@ -123,8 +368,13 @@ import { ComboBoxPlaceholder } from './vcf-combo-box-placeholder.js';
             return;
           }
 
+          trackPageRequest(params.page);
+
           if (cache[params.page]) {
-            // This may happen after skipping pages by scrolling fast
+            // This may happen after skipping pages by scrolling fast, or when
+            // the page has been prefetched. Keep the page in the active range
+            // so that the next requested range stays sequential.
+            pageCallbacks[params.page] = callback;
             commitPage(params.page, callback);
           } else {
             pageCallbacks[params.page] = callback;
@@ -144,11 +394,17 @@ import { ComboBoxPlaceholder } from './vcf-combo-box-placeholder.js';
               // Wasn't a sequential page index, clear the cache so combo-box will request for new pages
               clearPageCallbacks();
             } else {
-              // The requested page was sequential, extend the requested range
-              const startIndex = params.pageSize * rangeMin;
-              const endIndex = params.pageSize * (rangeMax + 1);
+              // The requested page was sequential, extend the requested range,
+              // including the prefetched pages
+              const prefetch = getPrefetchCount(rangeMin, rangeMax, params.pageSize, maxRangeCount);
+              const startIndex = params.pageSize * rangeMin + Math.min(prefetch, 0);
+              let endIndex = params.pageSize * (rangeMax + 1) + Math.max(prefetch, 0);
+              if (comboBox._clientSideFilter) {
+                // Request all items at once for filtering them in the client-side
+                endIndex = Math.max(endIndex, getClientSideFilterThreshold());
+              }
 
-              serverFacade.requestData(startIndex, endIndex, params);
+              serverFacade.requestData(startIndex, endIndex, params, prefetch);
             }
           }
         };
@@ -156,15 +412,23 @@ import { ComboBoxPlaceholder } from './vcf-combo-box-placeholder.js';
         comboBox.$connector.clear = tryCatchWrapper((start, length) => {
           const firstPageToClear = Math.floor(start / comboBox.pageSize);
           const numberOfPagesToClear = Math.ceil(length / comboBox.pageSize);
+          const cachedResult = filterCache.get(serverFacade.getLastFilterSentToServer());
 
           for (let i = firstPageToClear; i < firstPageToClear + numberOfPagesToClear; i++) {
             delete cache[i];
+            if (cachedResult) {
+              cachedResult.pages.delete(i);
+            }
           }
         });
 
         comboBox.$connector.filter = tryCatchWrapper(function (item, filter) {
           filter = filter ? filter.toString().toLowerCase() : '';
-          return comboBox._getItemLabel(item, comboBox.itemLabelPath).toString().toLowerCase().indexOf(filter) > -1;
+          const label = comboBox._getItemLabel(item, comboBox.itemLabelPath).toString().toLowerCase();
+          if (comboBox._filterMode === 'startsWith') {
+            return label.startsWith(filter);
+          }
+          return label.indexOf(filter) > -1;
         });
 
         comboBox.$connector.set = tryCatchWrapper(function (index, items, filter) {
@@ -180,6 +444,7 @@ import { ComboBoxPlaceholder } from './vcf-combo-box-placeholder.js';
             // Makes sure that the dataProvider callback is called even when server
             // returns empty data set (no items match the filter).
             cache[0] = [];
+            rememberPage(filter, 0, []);
             return;
           }
 
@@ -191,6 +456,7 @@ import { ComboBoxPlaceholder } from './vcf-combo-box-placeholder.js';
             let slice = items.slice(i * comboBox.pageSize, (i + 1) * comboBox.pageSize);
 
             cache[page] = slice;
+            rememberPage(filter, page, slice);
           }
         });
 
@@ -216,16 +482,73 @@ import { ComboBoxPlaceholder } from './vcf-combo-box-placeholder.js';
           }
         });
 
+        // Converts a page sent in the compact columnar format back into item
+        // objects. Null values stand for properties that the item does not have.
+        const expandColumns = function (columns) {
+          const items = new Array(columns.length);
+          for (let i = 0; i < columns.length; i++) {
+            const item = {};
+            for (let c = 0; c < columns.names.length; c++) {
+              const value = columns.values[c][i];
+              if (value !== null) {
+                item[columns.names[c]] = value;
+              }
+            }
+            items[i] = item;
+          }
+          return items;
+        };
+
+        // Applies all changes of one server-side update in one pass: the new
+        // size, the set and cleared ranges in the order they were made, and
+        // finally the confirmation of the update
+        comboBox.$connector.applyUpdate = tryCatchWrapper(function (update) {
+          if (update.dataVersion !== dataVersion) {
+            // The items kept for other filters may be outdated
+            filterCache.clear();
+            dataVersion = update.dataVersion;
+          }
+          if (update.forceSize) {
+            comboBox.size = update.size;
+          } else {
+            comboBox.$connector.updateSize(update.size);
+          }
+
+          update.changes.forEach((change) => {
+            if (change.items) {
+              comboBox.$connector.set(change.start, change.items, update.filter);
+            } else if (change.columns) {
+              comboBox.$connector.set(change.start, expandColumns(change.columns), update.filter);
+            } else {
+              comboBox.$connector.clear(change.start, change.clear);
+            }
+          });
+
+          if (update.filter === serverFacade.getLastFilterSentToServer()) {
+            rememberSize(update.filter, update.size);
+          }
+          comboBox.$connector.confirm(update.updateId, update.filter);
+        });
+
         comboBox.$connector.reset = tryCatchWrapper(function () {
           clearPageCallbacks();
           cache = {};
+          filterCache.clear();
+          resetPageTracking();
           comboBox.clearCache();
         });
 
+        // Sends the latest request again after the server has dropped it for
+        // exceeding the allowed number of requests per second
+        comboBox.$connector.retryAfter = tryCatchWrapper(function (delay) {
+          serverFacade.retryAfter(delay);
+        });
+
         comboBox.$connector.confirm = tryCatchWrapper(function (id, filter) {
           if (filter != serverFacade.getLastFilterSentToServer()) {
             return;
           }
+          serverFacade.requestAnswered();
 
           // We're done applying changes from this batch, resolve pending
           // callbacks
@@ -246,7 +569,7 @@ import { ComboBoxPlaceholder } from './vcf-combo-box-placeholder.js';
           let data = cache[page];
 
           if (comboBox._clientSideFilter) {
-            performClientSideFilter(data, comboBox.filter, callback);
+            performClientSideFilter(page == 0 ? getClientSideItems() : data, comboBox.filter, callback);
           } else {
             // Remove the data if server-side filtering, but keep it for client-side
             // filtering
@@ -266,6 +589,21 @@ import { ComboBoxPlaceholder } from './vcf-combo-box-placeholder.js';
           let filteredItems = page;
 
           if (filter) {
+            const filterWorker =
+              comboBox._filterInWorker && comboBox._getFilterWorker ? comboBox._getFilterWorker() : null;
+            if (filterWorker) {
+              // Stale filters resolve with null, their callbacks are not
+              // needed anymore
+              filterWorker.setItems(page, (item) => comboBox._getItemLabel(item, comboBox.itemLabelPath));
+              filterWorker.filter(filter, comboBox._filterMode === 'startsWith').then(
+                tryCatchWrapper((items) => {
+                  if (items) {
+                    callback(items, items.length);
+                  }
+                })
+              );
+              return;
+            }
             filteredItems = page.filter((item) => comboBox.$connector.filter(item, filter));
           }
 
@@ -0,0 +1,132 @@
+/**
+ * Filters item labels in a Web Worker, so that typing stays responsive with
+ * large lists that are filtered in the browser.
+ *
+ * The worker keeps the lower case labels of the current items, and answers
+ * each filter request with the indices of the matching items. The labels are
+ * scanned in chunks, and a request is abandoned as soon as a newer one
+ * arrives, so that only the latest filter text is fully processed.
+ */
+
+// Source of the worker, which is started from a Blob URL so that no separate
+// file needs to be served
+const workerSource = `
+  const CHUNK_SIZE = 10000;
+  let labels = [];
+  let latestRequestId = 0;
+
+  const scan = (requestId, filter, startsWith, from, matches) => {
+    if (requestId !== latestRequestId) {
+      // A newer filter has been requested
+      return;
+    }
+    const to = Math.min(from + CHUNK_SIZE, labels.length);
+    for (let i = from; i < to; i++) {
+      const index = labels[i].indexOf(filter);
+      if (startsWith ? index === 0 : index > -1) {
+        matches.push(i);
+      }
+    }
+    if (to < labels.length) {
+      // Let newer requests in before scanning the next chunk
+      setTimeout(() => scan(requestId, filter, startsWith, to, matches));
+    } else {
+      const indices = Int32Array.from(matches);
+      postMessage({ requestId, indices }, [indices.buffer]);
+    }
+  };
+
+  onmessage = (e) => {
+    const message = e.data;
+    if (message.labels) {
+      labels = message.labels;
+    }
+    if (message.requestId !== undefined) {
+      latestRequestId = message.requestId;
+      if (message.filter !== undefined) {
+        scan(message.requestId, message.filter, message.startsWith, 0, []);
+      }
+    }
+  };
+`;
+
+export class ComboBoxFilterWorker {
+  /**
+   * Creates the worker engine, or returns null if workers cannot be started,
+   * for example because of the content security policy of the page
+   */
+  static create() {
+    try {
+      const url = URL.createObjectURL(new Blob([workerSource], { type: 'text/javascript' }));
+      const worker = new Worker(url);
+      URL.revokeObjectURL(url);
+      return new ComboBoxFilterWorker(worker);
+    } catch (e) {
+      return null;
+    }
+  }
+
+  constructor(worker) {
+    this._worker = worker;
+    this._requestId = 0;
+    this._pending = null;
+    this._items = null;
+    this._worker.onmessage = (e) => {
+      const pending = this._pending;
+      if (pending && pending.requestId === e.data.requestId) {
+        this._pending = null;
+        pending.resolve(e.data.indices);
+      }
+    };
+  }
+
+  /**
+   * Sends the labels of the items to the worker, unless they were already
+   * sent for the same items array
+   *
+   * @param {Array} items the items to filter
+   * @param {Function} getLabel returns the label of an item
+   */
+  setItems(items, getLabel) {
+    if (items === this._items) {
+      return;
+    }
+    this._items = items;
+    const labels = items.map((item) => getLabel(item).toString().toLowerCase());
+    this._cancelPending();
+    this._worker.postMessage({ labels, requestId: ++this._requestId });
+  }
+
+  /**
+   * Filters the items set with `setItems`
+   *
+   * @param {string} filter the filter text
+   * @param {boolean} startsWith whether labels need to start with the filter
+   *   text, instead of containing it
+   * @return {Promise} resolves with the matching items, or with null when a
+   *   newer filter has been requested in the meantime
+   */
+  filter(filter, startsWith) {
+    this._cancelPending();
+    const items = this._items;
+    const requestId = ++this._requestId;
+    return new Promise((resolve) => {
+      this._pending = { requestId, resolve };
+      this._worker.postMessage({ requestId, filter: filter.toString().toLowerCase(), startsWith });
+    }).then((indices) => (indices ? Array.from(indices, (i) => items[i]) : null));
+  }
+
+  /** Stops the worker */
+  terminate() {
+    this._cancelPending();
+    this._worker.terminate();
+  }
+
+  /** @private */
+  _cancelPending() {
+    if (this._pending) {
+      this._pending.resolve(null);
+      this._pending = null;
+    }
+  }
+}
@@ -4,6 +4,7 @@
  * This program is available under Apache License Version 2.0, available at https://vaadin.com/license/
  */
 import { isTouch } from './browser-utils.js';
+import { ComboBoxFilterWorker } from './vcf-combo-box-filter-worker.js';
 import { ControllerMixin } from '@vaadin/component-base/src/controller-mixin.js';
 import { DisabledMixin } from '@vaadin/component-base/src/disabled-mixin.js';
 import { isElementFocused } from '@vaadin/component-base/src/focus-utils.js';
@@ -371,6 +372,11 @@ export const ComboBoxMixin = (subclass) =>
 
       // Close the overlay on detach
       this.close();
+
+      if (this.__filterWorker) {
+        this.__filterWorker.terminate();
+        this.__filterWorker = undefined;
+      }
     }
 
     /**
@@ -1052,6 +1058,10 @@ export const ComboBoxMixin = (subclass) =>
       this._focusedIndex = -1;
 
       if (this.items) {
+        if (this._filterInWorker && filter) {
+          this.__filterItemsInWorker(this.items, filter);
+          return;
+        }
         this.filteredItems = this._filterItems(this.items, filter);
       } else {
         // With certain use cases (e. g., external filtering), `items` are
@@ -1206,6 +1216,39 @@ export const ComboBoxMixin = (subclass) =>
       }
     }
 
+    /**
+     * Gets the engine for filtering items in a Web Worker, which is started
+     * when first needed and stopped when the element is detached. Returns null
+     * if no worker can be started.
+     * @protected
+     */
+    _getFilterWorker() {
+      if (this.__filterWorker === undefined) {
+        this.__filterWorker = ComboBoxFilterWorker.create();
+      }
+      return this.__filterWorker;
+    }
+
+    /**
+     * Filters the items in a Web Worker, and sets the matching items as the
+     * filtered items unless the filter has changed in the meantime. Falls
+     * back to filtering in the main thread if no worker can be started.
+     * @private
+     */
+    __filterItemsInWorker(items, filter) {
+      const filterWorker = this._getFilterWorker();
+      if (!filterWorker) {
+        this.filteredItems = this._filterItems(items, filter);
+        return;
+      }
+      filterWorker.setItems(items, (item) => this._getItemLabel(item));
+      filterWorker.filter(filter, false).then((filteredItems) => {
+        if (filteredItems && this.items === items && this.filter === filter) {
+          this.filteredItems = filteredItems;
+        }
+      });
+    }
+
     /** @private */
     _filterItems(arr, filter) {
       if (!arr) {
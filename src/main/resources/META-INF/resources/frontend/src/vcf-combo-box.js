@@ -572,6 +572,17 @@ class ComboBox extends ComboBoxDataProviderMixin(
       _positionTarget: {
         type: Object,
       },
+
+      /**
+       * Set by the server when the value is validated in the server. The
+       * `invalid` state set from the server is then kept, instead of
+       * validating the constraints in the browser.
+       * @protected
+       */
+      _serverValidation: {
+        type: Boolean,
+        value: false,
+      },
     };
   }
 
@@ -602,6 +613,20 @@ class ComboBox extends ComboBoxDataProviderMixin(
     this._toggleElement = this.$.toggleButton;
   }
 
+  /**
+   * Returns true if the current input value satisfies all constraints, and
+   * updates the `invalid` state. When validated in the server, returns the
+   * state set from the server instead.
+   * @return {boolean}
+   * @override
+   */
+  validate() {
+    if (this._serverValidation) {
+      return !this.invalid;
+    }
+    return super.validate();
+  }
+
   /**
    * Override method inherited from `FocusMixin` to validate on blur.
    * @param {boolean} focused
@@ -604,6 +604,17 @@ class MultiSelectComboBox extends ResizeMixin(InputControlMixin(ThemableMixin(El
        */
       autoOpenDisabled: Boolean,
 
+      /**
+       * Set by the server when the value is validated in the server. The
+       * `invalid` state set from the server is then kept, instead of
+       * validating the constraints in the browser.
+       * @protected
+       */
+      _serverValidation: {
+        type: Boolean,
+        value: false,
+      },
+
       /**
        * Set to true to display the clear icon which clears the input.
        * @attr {boolean} clear-button-visible
@@ -968,6 +979,20 @@ class MultiSelectComboBox extends ResizeMixin(InputControlMixin(ThemableMixin(El
     }
   }
 
+  /**
+   * Returns true if the current input value satisfies all constraints, and
+   * updates the `invalid` state. When validated in the server, returns the
+   * state set from the server instead.
+   * @return {boolean}
+   * @override
+   */
+  validate() {
+    if (this._serverValidation) {
+      return !this.invalid;
+    }
+    return super.validate();
+  }
+
   /**
    * Override method inherited from `FocusMixin` to validate on blur.
    * @param {boolean} focused
@@ -1096,6 +1121,11 @@ class MultiSelectComboBox extends ResizeMixin(InputControlMixin(ThemableMixin(El
     return this.$.comboBox._getItemLabel(item);
   }
 
+  /** @protected */
+  _getFilterWorker() {
+    return this.$.comboBox._getFilterWorker();
+  }
+
   /** @private */
   _getOverflowLabel(length) {
     return length;
@@ -0,0 +1,204 @@
+package org.vaadin.addons.componentfactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComboBoxAsyncFetcherTest {
+
+    private final List<Runnable> accessQueue = new ArrayList<>();
+    private final Executor access = accessQueue::add;
+    private final List<CompletableFuture<ComboBoxAsyncFetcher.Result<String>>> futures = new ArrayList<>();
+    private final ComboBoxAsyncFetcher.Loader<String> loader = (filter,
+            start, length, knownSize) -> {
+        CompletableFuture<ComboBoxAsyncFetcher.Result<String>> future = new CompletableFuture<>();
+        futures.add(future);
+        return future;
+    };
+
+    private String filter = "";
+    private boolean loadOnMiss = true;
+    private int misses;
+    private int delegateQueries;
+    private int loaded;
+    private ComboBoxAsyncFetcher<String> fetcher;
+
+    @Before
+    public void setUp() {
+        fetcher = new ComboBoxAsyncFetcher<>(
+                new ComboBoxDataCommunicator.FetchHandler<String>() {
+                    @Override
+                    public Stream<String> fetch(int offset, int limit) {
+                        delegateQueries++;
+                        return Stream.of("delegate");
+                    }
+
+                    @Override
+                    public int size() {
+                        delegateQueries++;
+                        return 1;
+                    }
+                }, () -> filter, () -> {
+                    misses++;
+                    return loadOnMiss;
+                });
+    }
+
+    @Test
+    public void load_completed_servesResult() {
+        load("a", 0, 3);
+        Assert.assertFalse(fetcher.hasResult("a", 0, 3));
+
+        futures.get(0).complete(result(0, 3, 10));
+        Assert.assertEquals(0, loaded);
+        runAccessQueue();
+
+        Assert.assertEquals(1, loaded);
+        Assert.assertTrue(fetcher.hasResult("a", 0, 3));
+        Assert.assertTrue(fetcher.hasResult("a", 1, 2));
+        Assert.assertFalse(fetcher.hasResult("a", 1, 3));
+        Assert.assertFalse(fetcher.hasResult("b", 0, 3));
+
+        filter = "a";
+        Assert.assertEquals(10, fetcher.size());
+        Assert.assertEquals(Arrays.asList("1", "2"), fetch(1, 2));
+        Assert.assertEquals(0, misses);
+        Assert.assertFalse(fetcher.takeAnsweredPending());
+    }
+
+    @Test
+    public void load_sameRequestPending_notLoadedAgain() {
+        load("a", 0, 3);
+        load("a", 0, 3);
+        Assert.assertEquals(1, futures.size());
+    }
+
+    @Test
+    public void load_newerRequest_cancelsAndIgnoresOlder() {
+        load("a", 0, 3);
+        load("ab", 0, 3);
+        Assert.assertTrue(futures.get(0).isCancelled());
+
+        futures.get(1).complete(result(0, 3, 5));
+        runAccessQueue();
+        Assert.assertEquals(1, loaded);
+        Assert.assertTrue(fetcher.hasResult("ab", 0, 3));
+    }
+
+    @Test
+    public void load_completedAfterClear_ignored() {
+        load("a", 0, 3);
+        CompletableFuture<ComboBoxAsyncFetcher.Result<String>> future = futures
+                .get(0);
+        fetcher.clear();
+        Assert.assertTrue(future.isCancelled());
+        runAccessQueue();
+        Assert.assertEquals(0, loaded);
+        Assert.assertFalse(fetcher.hasResult("a", 0, 3));
+    }
+
+    @Test
+    public void load_knownSize_passedToLoader() {
+        List<Integer> knownSizes = new ArrayList<>();
+        ComboBoxAsyncFetcher.Loader<String> sizeLoader = (loadFilter, start,
+                length, knownSize) -> {
+            knownSizes.add(knownSize);
+            return CompletableFuture.completedFuture(result(start, length, 7));
+        };
+        fetcher.load(access, "a", 0, 3, sizeLoader, () -> loaded++);
+        runAccessQueue();
+        fetcher.load(access, "a", 3, 3, sizeLoader, () -> loaded++);
+        fetcher.load(access, "b", 0, 3, sizeLoader, () -> loaded++);
+        Assert.assertEquals(Arrays.asList(null, 7, null), knownSizes);
+    }
+
+    @Test
+    public void load_failed_answersWithNoItems() {
+        load("a", 0, 3);
+        futures.get(0).completeExceptionally(new RuntimeException("failed"));
+
+        try {
+            runAccessQueue();
+            Assert.fail("The failure should be reported");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("failed", e.getCause().getMessage());
+        }
+
+        // The empty answer is sent to the client
+        Assert.assertEquals(1, loaded);
+        filter = "a";
+        Assert.assertEquals(0, fetcher.size());
+        Assert.assertEquals(Arrays.asList(), fetch(0, 3));
+        Assert.assertEquals(0, misses);
+        Assert.assertEquals(0, delegateQueries);
+
+        // Requesting the range again loads it again
+        Assert.assertFalse(fetcher.hasResult("a", 0, 3));
+        load("a", 0, 3);
+        Assert.assertEquals(2, futures.size());
+    }
+
+    @Test
+    public void query_notCovered_answeredWhileLoading() {
+        Assert.assertEquals(0, fetcher.size());
+        Assert.assertEquals(Arrays.asList(), fetch(0, 3));
+        Assert.assertEquals(2, misses);
+        Assert.assertEquals(0, delegateQueries);
+        Assert.assertTrue(fetcher.takeAnsweredPending());
+        Assert.assertFalse(fetcher.takeAnsweredPending());
+    }
+
+    @Test
+    public void query_otherFilterOrRange_answeredWhileLoading() {
+        load("", 0, 3);
+        futures.get(0).complete(result(0, 3, 10));
+        runAccessQueue();
+
+        Assert.assertEquals(Arrays.asList(), fetch(3, 3));
+        filter = "a";
+        Assert.assertEquals(0, fetcher.size());
+        Assert.assertEquals(2, misses);
+        Assert.assertTrue(fetcher.takeAnsweredPending());
+    }
+
+    @Test
+    public void query_missDeclined_passedToDelegate() {
+        loadOnMiss = false;
+        Assert.assertEquals(1, fetcher.size());
+        Assert.assertEquals(Arrays.asList("delegate"), fetch(0, 3));
+        Assert.assertEquals(2, delegateQueries);
+        Assert.assertFalse(fetcher.takeAnsweredPending());
+    }
+
+    private void load(String loadFilter, int start, int length) {
+        fetcher.load(access, loadFilter, start, length, loader,
+                () -> loaded++);
+    }
+
+    private List<String> fetch(int offset, int limit) {
+        return fetcher.fetch(offset, limit).collect(Collectors.toList());
+    }
+
+    private void runAccessQueue() {
+        List<Runnable> commands = new ArrayList<>(accessQueue);
+        accessQueue.clear();
+        commands.forEach(Runnable::run);
+    }
+
+    private static ComboBoxAsyncFetcher.Result<String> result(int start,
+            int length, int size) {
+        return new ComboBoxAsyncFetcher.Result<>(
+                IntStream.range(start, start + length).mapToObj(String::valueOf)
+                        .collect(Collectors.toList()),
+                size);
+    }
+}
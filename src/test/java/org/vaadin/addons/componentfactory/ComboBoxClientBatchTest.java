@@ -0,0 +1,99 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.component.internal.PendingJavaScriptInvocation;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComboBoxClientBatchTest {
+
+    private TestUI ui;
+
+    @Before
+    public void setUp() {
+        ui = new TestUI();
+    }
+
+    @After
+    public void tearDown() {
+        TestUI.clearCurrent();
+    }
+
+    @Test
+    public void attach_oneBatchForAllComboBoxes() {
+        ui.add(createComboBox(), createComboBox());
+
+        List<String> expressions = getExpressions(ui.respond());
+        Assert.assertEquals(1, expressions.stream()
+                .filter(expression -> expression.contains("initBatch"))
+                .count());
+    }
+
+    @Test
+    public void attach_batchSentBeforeUpdates() {
+        MultiSelectComboBox<String> comboBox = createComboBox();
+        ui.add(comboBox);
+        comboBox.getDataController().setRequestedRange(0,
+                comboBox.getPageSize(), "", 0);
+
+        List<String> expressions = getExpressions(ui.respond());
+        int batch = indexOf(expressions, "initBatch");
+        int update = indexOf(expressions, "$connector.applyUpdate");
+        Assert.assertTrue(batch >= 0);
+        Assert.assertTrue(update >= 0);
+        Assert.assertTrue(batch < update);
+    }
+
+    @Test
+    public void setI18n_twiceBeforeResponse_keysMerged() {
+        MultiSelectComboBox<String> comboBox = createComboBox();
+        ui.add(comboBox);
+        comboBox.setI18n(new MultiSelectComboBoxI18n().setCleared("Cleared"));
+        comboBox.setI18n(new MultiSelectComboBoxI18n().setTotal("{count} items"));
+
+        PendingJavaScriptInvocation batch = ui.respond().stream()
+                .filter(invocation -> invocation.getInvocation()
+                        .getExpression().contains("initBatch"))
+                .findFirst().get();
+        JsonArray i18ns = (JsonArray) batch.getInvocation().getParameters()
+                .get(1);
+        Assert.assertEquals(1, i18ns.length());
+        JsonObject i18n = i18ns.getObject(0);
+        Assert.assertEquals("Cleared", i18n.getString("cleared"));
+        Assert.assertEquals("{count} items", i18n.getString("total"));
+    }
+
+    private static MultiSelectComboBox<String> createComboBox() {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add("Item " + i);
+        }
+        MultiSelectComboBox<String> comboBox = new MultiSelectComboBox<>();
+        comboBox.setItems(items);
+        return comboBox;
+    }
+
+    private static List<String> getExpressions(
+            List<PendingJavaScriptInvocation> invocations) {
+        return invocations.stream()
+                .map(invocation -> invocation.getInvocation().getExpression())
+                .collect(Collectors.toList());
+    }
+
+    private static int indexOf(List<String> expressions, String part) {
+        for (int i = 0; i < expressions.size(); i++) {
+            if (expressions.get(i).contains(part)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
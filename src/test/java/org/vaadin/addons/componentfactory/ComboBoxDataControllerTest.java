@@ -0,0 +1,230 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.component.internal.PendingJavaScriptInvocation;
+import com.vaadin.flow.data.provider.ListDataProvider;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.function.SerializablePredicate;
+import elemental.json.Json;
+import elemental.json.JsonArray;
+import elemental.json.JsonObject;
+import elemental.json.JsonType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComboBoxDataControllerTest {
+
+    private static final int ITEM_COUNT = 200;
+
+    private TestUI ui;
+    private CountingDataProvider dataProvider;
+    private MultiSelectComboBox<String> comboBox;
+    private ComboBoxDataController<String> dataController;
+
+    @Before
+    public void setUp() {
+        ui = new TestUI();
+        List<String> items = new ArrayList<>(ITEM_COUNT);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            items.add("Item " + i);
+        }
+        dataProvider = new CountingDataProvider(items);
+        comboBox = new MultiSelectComboBox<>();
+        comboBox.setDataProvider(dataProvider);
+        dataController = comboBox.getDataController();
+    }
+
+    @After
+    public void tearDown() {
+        TestUI.clearCurrent();
+    }
+
+    @Test
+    public void setRequestedRange_changesSentInOneUpdateWithResponse() {
+        ui.add(comboBox);
+        respond();
+
+        dataController.setRequestedRange(0, comboBox.getPageSize(), "item 1",
+                0);
+        Assert.assertTrue(TestUI.getUpdates(
+                ui.getInternals().dumpPendingJavaScriptInvocations()).isEmpty());
+
+        List<PendingJavaScriptInvocation> invocations = ui.respond();
+        Assert.assertTrue(invocations.stream()
+                .map(invocation -> invocation.getInvocation().getExpression())
+                .noneMatch(expression -> expression
+                        .matches(".*\\$connector\\.(set|updateSize|confirm)\\(.*")));
+        List<JsonObject> updates = TestUI.getUpdates(invocations);
+        Assert.assertEquals(1, updates.size());
+        JsonObject update = updates.get(0);
+        Assert.assertEquals(111, (int) update.getNumber("size"));
+        Assert.assertEquals("item 1", update.getString("filter"));
+        JsonArray changes = update.getArray("changes");
+        Assert.assertEquals(1, changes.length());
+        Assert.assertEquals(0, (int) changes.getObject(0).getNumber("start"));
+        JsonArray items = changes.getObject(0).getArray("items");
+        Assert.assertEquals(comboBox.getPageSize(), items.length());
+        Assert.assertEquals("Item 1", items.getObject(0).getString("label"));
+        Assert.assertTrue(items.getObject(0).hasKey("key"));
+
+        // Nothing more is sent until the client requests other items
+        dataController.confirmUpdate((int) update.getNumber("updateId"));
+        Assert.assertTrue(TestUI.getUpdates(ui.respond()).isEmpty());
+    }
+
+    @Test
+    public void compactDataFormat_itemsSentAsColumns() {
+        comboBox.setCompactDataFormat(true);
+        ui.add(comboBox);
+        respond();
+
+        dataController.setRequestedRange(0, comboBox.getPageSize(), "", 0);
+        List<JsonObject> updates = respond();
+        Assert.assertEquals(1, updates.size());
+        JsonArray changes = updates.get(0).getArray("changes");
+        Assert.assertEquals(1, changes.length());
+        JsonObject change = changes.getObject(0);
+        Assert.assertFalse(change.hasKey("items"));
+        JsonObject columns = change.getObject("columns");
+        Assert.assertEquals(comboBox.getPageSize(),
+                (int) columns.getNumber("length"));
+
+        JsonArray names = columns.getArray("names");
+        JsonArray values = columns.getArray("values");
+        Assert.assertEquals(names.length(), values.length());
+        int label = -1;
+        int key = -1;
+        for (int i = 0; i < names.length(); i++) {
+            Assert.assertEquals(comboBox.getPageSize(),
+                    values.getArray(i).length());
+            if ("label".equals(names.getString(i))) {
+                label = i;
+            } else if ("key".equals(names.getString(i))) {
+                key = i;
+            }
+        }
+        Assert.assertTrue(key >= 0);
+        Assert.assertTrue(label >= 0);
+        Assert.assertEquals("Item 0", values.getArray(label).getString(0));
+        Assert.assertEquals("Item 49", values.getArray(label).getString(49));
+    }
+
+    @Test
+    public void toColumns_missingPropertiesPaddedWithNull() {
+        JsonObject first = Json.createObject();
+        first.put("key", "1");
+        JsonObject second = Json.createObject();
+        second.put("key", "2");
+        second.put("label", "Second");
+
+        JsonObject columns = ComboBoxDataController
+                .toColumns(Arrays.asList(first, second));
+        Assert.assertEquals(2, (int) columns.getNumber("length"));
+        JsonArray names = columns.getArray("names");
+        Assert.assertEquals("key", names.getString(0));
+        Assert.assertEquals("label", names.getString(1));
+        JsonArray labels = columns.getArray("values").getArray(1);
+        Assert.assertEquals(2, labels.length());
+        Assert.assertEquals(JsonType.NULL, labels.get(0).getType());
+        Assert.assertEquals("Second", labels.getString(1));
+    }
+
+    @Test
+    public void pageCache_refreshAllWithFilter_emptyFilterGetsAllItems() {
+        comboBox.setPageCacheSize(10);
+        ui.add(comboBox);
+        respond();
+
+        requestAndAssertSize("item 1", 111);
+        dataProvider.refreshAll();
+        respond();
+        requestAndAssertSize("", ITEM_COUNT);
+    }
+
+    @Test
+    public void sharedResultCache_refreshAllWithFilter_emptyFilterGetsAllItems() {
+        comboBox.setSharedResultCache(
+                new ComboBoxSharedResultCache(100, Duration.ofMinutes(1)),
+                "items");
+        ui.add(comboBox);
+        respond();
+
+        requestAndAssertSize("item 1", 111);
+        dataProvider.refreshAll();
+        respond();
+        requestAndAssertSize("", ITEM_COUNT);
+    }
+
+    @Test
+    public void deferredRefresh_refreshAllWhileClosed_refreshedWhenOpened() {
+        comboBox.setDeferredRefresh(true);
+        ui.add(comboBox);
+        comboBox.setOpened(true);
+        respond();
+        requestAndAssertSize("", ITEM_COUNT);
+        comboBox.setOpened(false);
+        respond();
+
+        dataProvider.queryCount = 0;
+        dataProvider.refreshAll();
+        Assert.assertTrue(respond().isEmpty());
+        Assert.assertEquals(0, dataProvider.queryCount);
+
+        comboBox.setOpened(true);
+        List<JsonObject> updates = respond();
+        Assert.assertEquals(1, updates.size());
+        Assert.assertEquals(ITEM_COUNT, (int) updates.get(0).getNumber("size"));
+        Assert.assertTrue(dataProvider.queryCount > 0);
+    }
+
+    private void requestAndAssertSize(String filter, int expectedSize) {
+        dataController.setRequestedRange(0, comboBox.getPageSize(), filter, 0);
+        List<JsonObject> updates = respond();
+        Assert.assertEquals(1, updates.size());
+        Assert.assertEquals(expectedSize,
+                (int) updates.get(0).getNumber("size"));
+    }
+
+    /**
+     * Responds to the client, and confirms the updates sent with it like the
+     * connector does
+     */
+    private List<JsonObject> respond() {
+        List<JsonObject> updates = TestUI.getUpdates(ui.respond());
+        for (JsonObject update : updates) {
+            dataController.confirmUpdate((int) update.getNumber("updateId"));
+        }
+        return updates;
+    }
+
+    private static class CountingDataProvider
+            extends ListDataProvider<String> {
+        private int queryCount;
+
+        private CountingDataProvider(List<String> items) {
+            super(items);
+        }
+
+        @Override
+        public Stream<String> fetch(
+                Query<String, SerializablePredicate<String>> query) {
+            queryCount++;
+            return super.fetch(query);
+        }
+
+        @Override
+        public int size(
+                Query<String, SerializablePredicate<String>> query) {
+            queryCount++;
+            return super.size(query);
+        }
+    }
+}
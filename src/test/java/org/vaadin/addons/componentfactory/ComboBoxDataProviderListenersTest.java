@@ -0,0 +1,98 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.Tag;
+import com.vaadin.flow.data.provider.DataProviderListener;
+import com.vaadin.flow.data.provider.ListDataProvider;
+import com.vaadin.flow.shared.Registration;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ComboBoxDataProviderListenersTest {
+
+    private final CountingDataProvider dataProvider = new CountingDataProvider();
+    private final List<String> events = new ArrayList<>();
+
+    @Test
+    public void addListener_sharesOneDataProviderListener() {
+        Registration first = addListener("first");
+        Registration second = addListener("second");
+        Assert.assertEquals(1, dataProvider.listenerCount);
+
+        dataProvider.refreshAll();
+        Assert.assertEquals(Arrays.asList("first", "second"), events);
+
+        first.remove();
+        dataProvider.refreshAll();
+        Assert.assertEquals(Arrays.asList("first", "second", "second"),
+                events);
+
+        second.remove();
+        Assert.assertEquals(0, dataProvider.listenerCount);
+    }
+
+    @Test
+    public void addListener_collectedSubscription_purged()
+            throws InterruptedException {
+        WeakReference<Registration> collected = new WeakReference<>(
+                addListener("collected"));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (collected.get() != null
+                && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(collected.get());
+
+        // Purged when another listener is added or removed
+        CountingDataProvider other = new CountingDataProvider();
+        while (dataProvider.listenerCount > 0
+                && System.currentTimeMillis() < deadline) {
+            ComboBoxDataProviderListeners
+                    .addListener(other, new TestComponent(), event -> {
+                    }).remove();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, dataProvider.listenerCount);
+        Assert.assertEquals(0, other.listenerCount);
+
+        dataProvider.refreshAll();
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    private Registration addListener(String name) {
+        return ComboBoxDataProviderListeners.addListener(dataProvider,
+                new TestComponent(), event -> events.add(name));
+    }
+
+    @Tag("test-component")
+    private static class TestComponent extends Component {
+    }
+
+    private static class CountingDataProvider
+            extends ListDataProvider<String> {
+        private int listenerCount;
+
+        private CountingDataProvider() {
+            super(new ArrayList<>());
+        }
+
+        @Override
+        public Registration addDataProviderListener(
+                DataProviderListener<String> listener) {
+            Registration registration = super.addDataProviderListener(
+                    listener);
+            listenerCount++;
+            return () -> {
+                listenerCount--;
+                registration.remove();
+            };
+        }
+    }
+}
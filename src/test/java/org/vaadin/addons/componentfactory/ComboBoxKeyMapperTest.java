@@ -0,0 +1,180 @@
+package org.vaadin.addons.componentfactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComboBoxKeyMapperTest {
+
+    private final Set<Integer> selected = new HashSet<>();
+    private ComboBoxKeyMapper<Integer> keyMapper;
+
+    @Before
+    public void setUp() {
+        keyMapper = new ComboBoxKeyMapper<>(selected::contains);
+    }
+
+    @Test
+    public void key_sameItem_sameKey() {
+        String key = keyMapper.key(1);
+        Assert.assertEquals(key, keyMapper.key(1));
+        Assert.assertNotEquals(key, keyMapper.key(2));
+        Assert.assertEquals(Integer.valueOf(1), keyMapper.get(key));
+        Assert.assertTrue(keyMapper.has(1));
+    }
+
+    @Test
+    public void key_null_nullKey() {
+        Assert.assertEquals("null", keyMapper.key(null));
+        Assert.assertFalse(keyMapper.has(null));
+        Assert.assertNull(keyMapper.get("null"));
+    }
+
+    @Test
+    public void get_unknownKey_null() {
+        keyMapper.key(1);
+        Assert.assertNull(keyMapper.get("12345"));
+        Assert.assertNull(keyMapper.get("not a number"));
+        Assert.assertNull(keyMapper.get(null));
+    }
+
+    @Test
+    public void remove_selected_keptUntilPurged() {
+        String key = keyMapper.key(1);
+        selected.add(1);
+        keyMapper.remove(1);
+        keyMapper.purge();
+        Assert.assertEquals(Integer.valueOf(1), keyMapper.get(key));
+
+        selected.clear();
+        keyMapper.purge();
+        Assert.assertNull(keyMapper.get(key));
+        Assert.assertFalse(keyMapper.has(1));
+    }
+
+    @Test
+    public void remove_selectedThenActiveAgain_notPurged() {
+        String key = keyMapper.key(1);
+        selected.add(1);
+        keyMapper.remove(1);
+        Assert.assertEquals(key, keyMapper.key(1));
+
+        selected.clear();
+        keyMapper.purge();
+        Assert.assertEquals(Integer.valueOf(1), keyMapper.get(key));
+    }
+
+    @Test
+    public void remove_lastKey_tablesReleased() {
+        String first = keyMapper.key(1);
+        keyMapper.key(2);
+        keyMapper.remove(1);
+        Assert.assertTrue(keyMapper.getCapacity() > 0);
+        keyMapper.remove(2);
+        Assert.assertEquals(0, keyMapper.getCapacity());
+
+        // Keys are not reused right away
+        Assert.assertNotEquals(first, keyMapper.key(1));
+    }
+
+    @Test
+    public void purge_lastKey_tablesReleased() {
+        keyMapper.key(1);
+        selected.add(1);
+        keyMapper.remove(1);
+        selected.clear();
+        keyMapper.purge();
+        Assert.assertEquals(0, keyMapper.getCapacity());
+    }
+
+    @Test
+    public void removeAll_tablesReleased() {
+        String key = keyMapper.key(1);
+        keyMapper.removeAll();
+        Assert.assertEquals(0, keyMapper.getCapacity());
+        Assert.assertNull(keyMapper.get(key));
+    }
+
+    @Test
+    public void refresh_replacesItemWithSameId() {
+        ComboBoxKeyMapper<String> mapper = new ComboBoxKeyMapper<>(
+                item -> false);
+        mapper.setIdentifierGetter(item -> item.charAt(0));
+        String key = mapper.key("a1");
+        mapper.refresh("a2");
+        Assert.assertEquals("a2", mapper.get(key));
+        Assert.assertEquals(key, mapper.key("a3"));
+    }
+
+    @Test
+    public void randomOperations_matchModel() {
+        Random random = new Random(42);
+        Map<Integer, String> model = new HashMap<>();
+        Set<Integer> marked = new HashSet<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            // Few distinct items so that the tables grow and shrink
+            int item = random.nextInt(random.nextBoolean() ? 40 : 400);
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                String key = keyMapper.key(item);
+                String expected = model.get(item);
+                if (expected != null) {
+                    Assert.assertEquals(expected, key);
+                } else {
+                    Assert.assertFalse(model.containsValue(key));
+                    model.put(item, key);
+                }
+                marked.remove(item);
+            } else if (operation < 9) {
+                keyMapper.remove(item);
+                if (selected.contains(item)) {
+                    if (model.containsKey(item)) {
+                        marked.add(item);
+                    }
+                } else {
+                    model.remove(item);
+                    marked.remove(item);
+                }
+            } else {
+                if (!selected.remove(item)) {
+                    selected.add(item);
+                }
+                keyMapper.purge();
+                Iterator<Integer> iterator = marked.iterator();
+                while (iterator.hasNext()) {
+                    Integer markedItem = iterator.next();
+                    if (!selected.contains(markedItem)) {
+                        model.remove(markedItem);
+                        iterator.remove();
+                    }
+                }
+            }
+
+            if (i % 1000 == 0 || model.isEmpty()) {
+                assertMatches(model);
+            }
+        }
+        assertMatches(model);
+    }
+
+    private void assertMatches(Map<Integer, String> model) {
+        for (int item = 0; item < 400; item++) {
+            String key = model.get(item);
+            Assert.assertEquals(key != null, keyMapper.has(item));
+            if (key != null) {
+                Assert.assertEquals(Integer.valueOf(item), keyMapper.get(key));
+            }
+        }
+        if (model.isEmpty()) {
+            Assert.assertEquals(0, keyMapper.getCapacity());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.data.provider.ListDataProvider;
+import com.vaadin.flow.function.SerializableFunction;
+import com.vaadin.flow.function.SerializablePredicate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComboBoxLabelIndexTest {
+
+    private static final int ITEM_COUNT = ComboBoxLabelIndex.MAX_CACHED_POSITIONS
+            * 2;
+
+    private static final SerializableFunction<String, String> LABEL_GENERATOR = String::valueOf;
+
+    private List<String> items;
+    private ListDataProvider<String> dataProvider;
+    private ComboBoxLabelIndex<String> index;
+
+    @Before
+    public void setUp() {
+        items = new ArrayList<>(ITEM_COUNT);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            items.add("Item " + i);
+        }
+        dataProvider = new ListDataProvider<>(items);
+        index = new ComboBoxLabelIndex<>(dataProvider, LABEL_GENERATOR,
+                () -> Locale.ROOT);
+    }
+
+    @Test
+    public void getMatches_matchesFilter() {
+        assertMatches("item 1234");
+        assertMatches("m 99");
+        assertMatches("no match");
+    }
+
+    @Test
+    public void getMatches_startsWith_matchesPrefix() {
+        index.setFilterMode(ComboBoxFilterMode.STARTS_WITH);
+        assertMatches("item 42");
+        assertMatches("tem");
+    }
+
+    @Test
+    public void getMatches_longerFilter_narrowsCachedResults() {
+        assertMatches("1");
+        assertMatches("12");
+        assertMatches("123");
+        assertMatches("1234");
+    }
+
+    @Test
+    public void getMatches_cachedPositionsStayWithinBound() {
+        for (int digit = 0; digit < 10; digit++) {
+            assertMatches(String.valueOf(digit));
+            assertMatches(digit + "0");
+            Assert.assertTrue(index
+                    .getCachedPositionCount() <= ComboBoxLabelIndex.MAX_CACHED_POSITIONS);
+        }
+    }
+
+    @Test
+    public void getMatches_resultAboveBound_notCached() {
+        assertMatches("item");
+        Assert.assertEquals(0, index.getCachedPositionCount());
+    }
+
+    @Test
+    public void invalidate_itemsChanged_matchesNewItems() {
+        assertMatches("item 7");
+        items.set(7, "Other");
+        index.invalidate();
+        assertMatches("item 7");
+        assertMatches("other");
+    }
+
+    @Test
+    public void refreshAll_itemsChanged_matchesNewItems() {
+        assertMatches("item 7");
+        items.set(7, "Other");
+        dataProvider.refreshAll();
+        assertMatches("item 7");
+        assertMatches("other");
+    }
+
+    @Test
+    public void sameDataProviderAndLabelGenerator_labelsShared() {
+        ComboBoxLabelIndex<String> other = new ComboBoxLabelIndex<>(
+                dataProvider, LABEL_GENERATOR, () -> Locale.ROOT);
+        assertMatches("item 12");
+        Assert.assertEquals(index.getCachedPositionCount(),
+                other.getCachedPositionCount());
+        Assert.assertTrue(other.getCachedPositionCount() > 0);
+
+        dataProvider.refreshAll();
+        Assert.assertEquals(0, other.getCachedPositionCount());
+    }
+
+    @Test
+    public void otherLabelGenerator_labelsNotShared() {
+        ComboBoxLabelIndex<String> other = new ComboBoxLabelIndex<>(
+                dataProvider, item -> item.replace("Item", "Entry"),
+                () -> Locale.ROOT);
+        assertMatches("item 12");
+        Assert.assertEquals(0, other.getCachedPositionCount());
+        SerializablePredicate<String> filter = other.createFilter("entry 12");
+        Assert.assertEquals(
+                items.stream().filter(filter).collect(Collectors.toList()),
+                new ArrayList<>(other.getMatches(filter, null)));
+    }
+
+    private void assertMatches(String filterText) {
+        SerializablePredicate<String> filter = index.createFilter(filterText);
+        List<String> expected = items.stream().filter(filter)
+                .collect(Collectors.toList());
+        Assert.assertEquals(expected, new ArrayList<>(
+                index.getMatches(filter, null)));
+    }
+}
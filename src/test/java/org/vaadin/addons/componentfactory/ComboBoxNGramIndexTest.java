@@ -0,0 +1,87 @@
+package org.vaadin.addons.componentfactory;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ComboBoxNGramIndexTest {
+
+    private final String[] labels = { "apple", "pineapple", "grape",
+            "applause", "papaya", "apple" };
+    private final ComboBoxNGramIndex index = new ComboBoxNGramIndex(labels);
+
+    @Test
+    public void search_returnsContainingLabelsInOrder() {
+        Assert.assertArrayEquals(new int[] { 0, 1, 5 }, index.search("apple"));
+        Assert.assertArrayEquals(new int[] { 0, 1, 3, 5 },
+                index.search("appl"));
+        Assert.assertArrayEquals(new int[] { 4 }, index.search("papa"));
+    }
+
+    @Test
+    public void search_allTrigramsButNotContained_noMatch() {
+        // "papaya" has the trigrams "apa" and "pap", but not "apapa"
+        Assert.assertArrayEquals(new int[0], index.search("apapa"));
+    }
+
+    @Test
+    public void search_unknownTrigram_noMatch() {
+        Assert.assertArrayEquals(new int[0], index.search("xyz"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void search_shortFilter_throws() {
+        index.search("ap");
+    }
+
+    @Test
+    public void search_randomLabels_matchesScan() {
+        Random random = new Random(42);
+        String[] randomLabels = new String[2000];
+        for (int i = 0; i < randomLabels.length; i++) {
+            randomLabels[i] = randomText(random, 3 + random.nextInt(20));
+        }
+        ComboBoxNGramIndex randomIndex = new ComboBoxNGramIndex(randomLabels);
+
+        for (int i = 0; i < 500; i++) {
+            String filter = randomText(random, 3 + random.nextInt(3));
+            int[] expected = IntStream.range(0, randomLabels.length)
+                    .filter(position -> randomLabels[position]
+                            .contains(filter))
+                    .toArray();
+            Assert.assertArrayEquals(filter, expected,
+                    randomIndex.search(filter));
+        }
+    }
+
+    @Test
+    public void search_manyDistinctTrigrams_matchesScan() {
+        // More trigrams than the initial capacity of the table, including
+        // the trigram with the lowest possible value
+        String[] manyLabels = IntStream.range(0, 20000)
+                .mapToObj(i -> i == 0 ? "\0\0\0\0" : "x" + (char) i + i)
+                .toArray(String[]::new);
+        ComboBoxNGramIndex manyIndex = new ComboBoxNGramIndex(manyLabels);
+
+        for (String filter : new String[] { "\0\0\0", "123", "x" + (char) 7
+                + "7", "9999", "x00" }) {
+            int[] expected = IntStream.range(0, manyLabels.length)
+                    .filter(position -> manyLabels[position]
+                            .contains(filter))
+                    .toArray();
+            Assert.assertArrayEquals(filter, expected,
+                    manyIndex.search(filter));
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            // A small alphabet so that filters have matches
+            text.append((char) ('a' + random.nextInt(4)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package org.vaadin.addons.componentfactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComboBoxPageCacheTest {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int ITEM_COUNT = 95;
+
+    private final List<String> queries = new ArrayList<>();
+    private String filter = "";
+    private ComboBoxPageCache<Integer> cache;
+
+    @Before
+    public void setUp() {
+        cache = new ComboBoxPageCache<>(
+                new ComboBoxDataCommunicator.FetchHandler<Integer>() {
+                    @Override
+                    public Stream<Integer> fetch(int offset, int limit) {
+                        queries.add(filter + ":" + offset + "+" + limit);
+                        return IntStream
+                                .range(offset,
+                                        Math.min(offset + limit, ITEM_COUNT))
+                                .boxed();
+                    }
+
+                    @Override
+                    public int size() {
+                        queries.add(filter + ":size");
+                        return ITEM_COUNT;
+                    }
+                }, () -> filter, () -> PAGE_SIZE);
+        cache.setMaxPages(4);
+    }
+
+    @Test
+    public void fetch_cachedPages_queriedOnce() {
+        assertFetch(0, 20);
+        assertFetch(0, 20);
+        assertFetch(5, 10);
+        Assert.assertEquals(1, queries.size());
+    }
+
+    @Test
+    public void fetch_unalignedRange_fetchesWholePages() {
+        assertFetch(15, 10);
+        Assert.assertEquals("[:10+20]", queries.toString());
+        assertFetch(10, 20);
+        Assert.assertEquals(1, queries.size());
+    }
+
+    @Test
+    public void fetch_lastPage_shorterPageCached() {
+        assertFetch(90, 10);
+        assertFetch(90, 10);
+        Assert.assertEquals("[:90+10]", queries.toString());
+    }
+
+    @Test
+    public void fetch_otherFilter_queriedAgain() {
+        assertFetch(0, 10);
+        filter = "a";
+        assertFetch(0, 10);
+        Assert.assertEquals("[:0+10, a:0+10]", queries.toString());
+    }
+
+    @Test
+    public void fetch_full_evictsLeastRecentlyUsed() {
+        for (int page = 0; page < 4; page++) {
+            assertFetch(page * PAGE_SIZE, PAGE_SIZE);
+        }
+        // Use the first page so that the second one is evicted
+        assertFetch(0, PAGE_SIZE);
+        assertFetch(40, PAGE_SIZE);
+        queries.clear();
+
+        assertFetch(0, PAGE_SIZE);
+        Assert.assertTrue(queries.isEmpty());
+        assertFetch(10, PAGE_SIZE);
+        Assert.assertEquals("[:10+10]", queries.toString());
+    }
+
+    @Test
+    public void fetch_rangeLongerThanCache_passedOn() {
+        assertFetch(0, 50);
+        assertFetch(0, 50);
+        Assert.assertEquals("[:0+50, :0+50]", queries.toString());
+    }
+
+    @Test
+    public void size_cachedPerFilter() {
+        Assert.assertEquals(ITEM_COUNT, cache.size());
+        Assert.assertEquals(ITEM_COUNT, cache.size());
+        filter = "a";
+        cache.size();
+        Assert.assertEquals("[:size, a:size]", queries.toString());
+    }
+
+    @Test
+    public void clear_queriedAgain() {
+        assertFetch(0, 10);
+        cache.size();
+        cache.clear();
+        assertFetch(0, 10);
+        cache.size();
+        Assert.assertEquals(4, queries.size());
+    }
+
+    @Test
+    public void disabled_passedOn() {
+        cache.setMaxPages(0);
+        assertFetch(0, 10);
+        assertFetch(0, 10);
+        cache.size();
+        cache.size();
+        Assert.assertEquals(4, queries.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaxPages_negative_throws() {
+        cache.setMaxPages(-1);
+    }
+
+    private void assertFetch(int offset, int limit) {
+        List<Integer> expected = IntStream
+                .range(offset, Math.min(offset + limit, ITEM_COUNT)).boxed()
+                .collect(Collectors.toList());
+        Assert.assertEquals(expected,
+                cache.fetch(offset, limit).collect(Collectors.toList()));
+    }
+}
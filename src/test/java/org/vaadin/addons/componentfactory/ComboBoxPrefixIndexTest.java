@@ -0,0 +1,64 @@
+package org.vaadin.addons.componentfactory;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ComboBoxPrefixIndexTest {
+
+    private final String[] labels = { "banana", "apple", "apricot", "app",
+            "cherry", "apple" };
+    private final ComboBoxPrefixIndex index = new ComboBoxPrefixIndex(labels);
+
+    @Test
+    public void search_returnsLabelsWithPrefixInOrder() {
+        Assert.assertArrayEquals(new int[] { 1, 2, 3, 5 }, index.search("ap"));
+        Assert.assertArrayEquals(new int[] { 1, 3, 5 }, index.search("app"));
+        Assert.assertArrayEquals(new int[] { 1, 5 }, index.search("apple"));
+        Assert.assertArrayEquals(new int[] { 4 }, index.search("cherry"));
+    }
+
+    @Test
+    public void search_emptyPrefix_allLabels() {
+        Assert.assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5 },
+                index.search(""));
+    }
+
+    @Test
+    public void search_noMatch_empty() {
+        Assert.assertArrayEquals(new int[0], index.search("apples"));
+        Assert.assertArrayEquals(new int[0], index.search("0"));
+        Assert.assertArrayEquals(new int[0], index.search("z"));
+    }
+
+    @Test
+    public void search_randomLabels_matchesScan() {
+        Random random = new Random(42);
+        String[] randomLabels = new String[2000];
+        for (int i = 0; i < randomLabels.length; i++) {
+            randomLabels[i] = randomText(random, random.nextInt(8));
+        }
+        ComboBoxPrefixIndex randomIndex = new ComboBoxPrefixIndex(
+                randomLabels);
+
+        for (int i = 0; i < 500; i++) {
+            String prefix = randomText(random, random.nextInt(5));
+            int[] expected = IntStream.range(0, randomLabels.length)
+                    .filter(position -> randomLabels[position]
+                            .startsWith(prefix))
+                    .toArray();
+            Assert.assertArrayEquals(prefix, expected,
+                    randomIndex.search(prefix));
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(4)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,177 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.function.SerializableRunnable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComboBoxRequestGovernorTest {
+
+    private final List<SerializableRunnable> beforeClientResponse = new ArrayList<>();
+    private final List<Integer> retries = new ArrayList<>();
+    private ComboBoxRequestGovernor governor;
+
+    @Before
+    public void setUp() {
+        governor = new ComboBoxRequestGovernor(beforeClientResponse::add,
+                retries::add);
+    }
+
+    @Test
+    public void onRequest_noLimits_passedOn() {
+        assertRange(0, 50, governor.onRequest(0, 50, 0, "a", 0));
+        endRoundTrip();
+        assertRange(50, 50, governor.onRequest(50, 50, 0, "a", 0));
+        Assert.assertEquals(2, governor.getAcceptedCount());
+    }
+
+    @Test
+    public void onRequest_duplicate_answeredWithSameRange() {
+        governor.onRequest(0, 50, 0, "a", 0);
+        endRoundTrip();
+        assertRange(0, 50, governor.onRequest(0, 50, 0, "a", 0));
+        Assert.assertEquals(1, governor.getAcceptedCount());
+        Assert.assertEquals(1, governor.getDuplicateCount());
+    }
+
+    @Test
+    public void onRequest_duplicateOfClamped_answeredWithClampedRange() {
+        governor.setMaxRangeLength(50);
+        governor.onRequest(0, 100, 0, "a", 0);
+        endRoundTrip();
+        assertRange(0, 50, governor.onRequest(0, 100, 0, "a", 0));
+        Assert.assertEquals(1, governor.getDuplicateCount());
+    }
+
+    @Test
+    public void onRequest_afterReset_passedOnAgain() {
+        governor.onRequest(0, 50, 0, "a", 0);
+        endRoundTrip();
+        governor.reset();
+        assertRange(0, 50, governor.onRequest(0, 50, 0, "a", 0));
+        Assert.assertEquals(2, governor.getAcceptedCount());
+        Assert.assertEquals(0, governor.getDuplicateCount());
+    }
+
+    @Test
+    public void onRequest_sameRoundTrip_coalesced() {
+        governor.onRequest(0, 50, 0, "a", 0);
+        assertRange(0, 100, governor.onRequest(50, 50, 0, "a", 0));
+        Assert.assertEquals(1, governor.getCoalescedCount());
+
+        // Different filter or disjoint range
+        assertRange(200, 50, governor.onRequest(200, 50, 0, "a", 0));
+        assertRange(0, 50, governor.onRequest(0, 50, 0, "b", 0));
+        Assert.assertEquals(1, governor.getCoalescedCount());
+    }
+
+    @Test
+    public void onRequest_tooLong_clamped() {
+        governor.setMaxRangeLength(100);
+        assertRange(0, 100, governor.onRequest(0, 150, 0, "a", 0));
+        Assert.assertEquals(1, governor.getClampedCount());
+    }
+
+    @Test
+    public void onRequest_clientSideFilterRange_notClamped() {
+        governor.setMaxRangeLength(100);
+        assertRange(0, 1000, governor.onRequest(0, 1000, 0, "", 1000));
+        Assert.assertEquals(0, governor.getClampedCount());
+
+        // Longer than the client-side filter threshold
+        endRoundTrip();
+        assertRange(0, 1000, governor.onRequest(0, 1500, 0, "a", 1000));
+        Assert.assertEquals(1, governor.getClampedCount());
+    }
+
+    @Test
+    public void onRequest_tooLong_prefetchCutOffFirst() {
+        governor.setMaxRangeLength(100);
+        // Prefetched items at the start of the range
+        assertRange(50, 100, governor.onRequest(0, 150, -50, "a", 0));
+        endRoundTrip();
+        assertRange(200, 100, governor.onRequest(200, 150, 50, "a", 0));
+    }
+
+    @Test
+    public void onRequest_throttled_droppedAndRetried() {
+        governor.setMaxRequestsPerSecond(1);
+        Assert.assertNotNull(governor.onRequest(0, 50, 0, "a", 0));
+        endRoundTrip();
+
+        Assert.assertNull(governor.onRequest(50, 50, 0, "a", 0));
+        Assert.assertNull(governor.onRequest(100, 50, 0, "a", 0));
+        Assert.assertEquals(2, governor.getThrottledCount());
+
+        // The client is asked once to send its latest request again when
+        // the next request is allowed
+        Assert.assertEquals(1, retries.size());
+        Assert.assertTrue(retries.get(0) > 0);
+        Assert.assertTrue(retries.get(0) <= 1000);
+    }
+
+    @Test
+    public void onRequest_throttledAfterRetryTime_retriedAgain()
+            throws InterruptedException {
+        governor.setMaxRequestsPerSecond(1000);
+        int accepted = 0;
+        while (governor.onRequest(accepted * 50, 50, 0, "a", 0) != null) {
+            accepted++;
+            endRoundTrip();
+        }
+        Assert.assertEquals(1, retries.size());
+
+        Thread.sleep(retries.get(0) + 1);
+        // Tokens have been refilled in the meantime
+        Assert.assertNotNull(governor.onRequest(0, 50, 0, "b", 0));
+        endRoundTrip();
+        while (governor.onRequest(accepted * 50, 50, 0, "a", 0) != null) {
+            accepted++;
+            endRoundTrip();
+        }
+        Assert.assertEquals(2, retries.size());
+    }
+
+    @Test
+    public void onRequest_lowCapacity_prefetchLeftOut() {
+        governor.setMaxRequestsPerSecond(4);
+        governor.onRequest(0, 50, 0, "a", 0);
+        endRoundTrip();
+        governor.onRequest(50, 50, 0, "a", 0);
+        endRoundTrip();
+        assertRange(100, 50, governor.onRequest(100, 100, 50, "a", 0));
+        Assert.assertEquals(1, governor.getPrefetchDroppedCount());
+    }
+
+    @Test
+    public void resetCounts_setsCountsToZero() {
+        governor.onRequest(0, 50, 0, "a", 0);
+        governor.onRequest(0, 50, 0, "a", 0);
+        governor.resetCounts();
+        Assert.assertEquals(0, governor.getAcceptedCount());
+        Assert.assertEquals(0, governor.getDuplicateCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaxRequestsPerSecond_negative_throws() {
+        governor.setMaxRequestsPerSecond(-1);
+    }
+
+    private void endRoundTrip() {
+        List<SerializableRunnable> commands = new ArrayList<>(
+                beforeClientResponse);
+        beforeClientResponse.clear();
+        commands.forEach(SerializableRunnable::run);
+    }
+
+    private static void assertRange(int start, int length,
+            ComboBoxRequestGovernor.Request request) {
+        Assert.assertNotNull(request);
+        Assert.assertEquals(start, request.getStart());
+        Assert.assertEquals(length, request.getLength());
+    }
+}
@@ -0,0 +1,151 @@
+package org.vaadin.addons.componentfactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ComboBoxSharedResultCacheTest {
+
+    private static final String DATASET = "dataset";
+
+    private final ComboBoxSharedResultCache cache = new ComboBoxSharedResultCache(
+            100, Duration.ofMinutes(1));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void getItems_sameQuery_loadedOnce() {
+        Assert.assertEquals(Arrays.asList("a", "b"), getItems("", 0));
+        Assert.assertEquals(Arrays.asList("a", "b"), getItems("", 0));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void getItems_differentQuery_loadedAgain() {
+        getItems("", 0);
+        getItems("", 2);
+        getItems("a", 0);
+        cache.getItems("other", "", ComboBoxFilterMode.CONTAINS, Locale.ROOT,
+                0, 2, this::load);
+        Assert.assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void getItems_differentFilterModeOrLocale_loadedAgain() {
+        getItems("a", 0);
+        cache.getItems(DATASET, "a", ComboBoxFilterMode.STARTS_WITH,
+                Locale.ROOT, 0, 2, this::load);
+        cache.getItems(DATASET, "a", ComboBoxFilterMode.CONTAINS,
+                Locale.GERMAN, 0, 2, this::load);
+        Assert.assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void getSize_sameQuery_loadedOnce() {
+        Assert.assertEquals(42, getSize(""));
+        Assert.assertEquals(42, getSize(""));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void getItems_expired_loadedAgain() throws InterruptedException {
+        ComboBoxSharedResultCache expiringCache = new ComboBoxSharedResultCache(
+                100, Duration.ofMillis(1));
+        expiringCache.getItems(DATASET, "", ComboBoxFilterMode.CONTAINS,
+                Locale.ROOT, 0, 2, this::load);
+        Thread.sleep(5);
+        expiringCache.getItems(DATASET, "", ComboBoxFilterMode.CONTAINS,
+                Locale.ROOT, 0, 2, this::load);
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void getItems_full_evictsLeastRecentlyUsed() {
+        ComboBoxSharedResultCache smallCache = new ComboBoxSharedResultCache(
+                1, Duration.ofMinutes(1));
+        for (int offset = 0; offset < 100; offset++) {
+            smallCache.getItems(DATASET, "", ComboBoxFilterMode.CONTAINS,
+                    Locale.ROOT, offset, 2, this::load);
+        }
+        loads.set(0);
+        for (int offset = 0; offset < 100; offset++) {
+            smallCache.getItems(DATASET, "", ComboBoxFilterMode.CONTAINS,
+                    Locale.ROOT, offset, 2, this::load);
+        }
+        // At most one entry per stripe is kept
+        Assert.assertTrue(loads.get() >= 100 - 16);
+    }
+
+    @Test
+    public void invalidate_dataset_removesOnlyDataset() {
+        getItems("", 0);
+        cache.getItems("other", "", ComboBoxFilterMode.CONTAINS, Locale.ROOT,
+                0, 2, this::load);
+        cache.invalidate(DATASET);
+        getItems("", 0);
+        cache.getItems("other", "", ComboBoxFilterMode.CONTAINS, Locale.ROOT,
+                0, 2, this::load);
+        Assert.assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void invalidate_item_removesAffectedResults() {
+        getItems("", 0);
+        cache.getItems(DATASET, "", ComboBoxFilterMode.CONTAINS, Locale.ROOT,
+                2, 2, () -> Arrays.asList("c", "d"));
+        getItems("x", 0);
+        getSize("");
+        loads.set(0);
+
+        cache.invalidate(DATASET, "c");
+
+        // Contains the item
+        cache.getItems(DATASET, "", ComboBoxFilterMode.CONTAINS, Locale.ROOT,
+                2, 2, this::load);
+        Assert.assertEquals(1, loads.get());
+        // Filtered results may change
+        getItems("x", 0);
+        Assert.assertEquals(2, loads.get());
+        // Unaffected
+        getItems("", 0);
+        getSize("");
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void invalidateAll_removesAll() {
+        getItems("", 0);
+        getSize("");
+        cache.invalidateAll();
+        getItems("", 0);
+        getSize("");
+        Assert.assertEquals(4, loads.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_noEntries_throws() {
+        new ComboBoxSharedResultCache(0, Duration.ofMinutes(1));
+    }
+
+    private List<String> getItems(String filter, int offset) {
+        return cache.getItems(DATASET, filter, ComboBoxFilterMode.CONTAINS,
+                Locale.ROOT, offset, 2, this::load);
+    }
+
+    private int getSize(String filter) {
+        return cache.getSize(DATASET, filter, ComboBoxFilterMode.CONTAINS,
+                Locale.ROOT, () -> {
+                    loads.incrementAndGet();
+                    return 42;
+                });
+    }
+
+    private List<String> load() {
+        loads.incrementAndGet();
+        return Arrays.asList("a", "b");
+    }
+}
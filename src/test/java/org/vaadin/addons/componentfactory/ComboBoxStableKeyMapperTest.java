@@ -0,0 +1,139 @@
+package org.vaadin.addons.componentfactory;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComboBoxStableKeyMapperTest {
+
+    private final Set<String> selected = new HashSet<>();
+    private ComboBoxStableKeyMapper<String> keyMapper;
+
+    @Before
+    public void setUp() {
+        keyMapper = new ComboBoxStableKeyMapper<>(selected::contains);
+    }
+
+    @Test
+    public void key_doesNotRevealIdentifier() {
+        String key = keyMapper.key("secret");
+        Assert.assertFalse(key.contains("secret"));
+        Assert.assertEquals("secret", keyMapper.get(key));
+    }
+
+    @Test
+    public void key_removedAndAddedAgain_sameKey() {
+        String key = keyMapper.key("a");
+        keyMapper.remove("a");
+        Assert.assertNull(keyMapper.get(key));
+        keyMapper.removeAll();
+        Assert.assertEquals(key, keyMapper.key("a"));
+    }
+
+    @Test
+    public void key_otherMapper_otherKey() {
+        ComboBoxStableKeyMapper<String> other = new ComboBoxStableKeyMapper<>(
+                item -> false);
+        Assert.assertNotEquals(keyMapper.key("a"), other.key("a"));
+    }
+
+    @Test
+    public void key_sameHashCode_distinctKeys() {
+        // "Aa" and "BB" have the same hash code
+        Assert.assertEquals("Aa".hashCode(), "BB".hashCode());
+        String first = keyMapper.key("Aa");
+        String second = keyMapper.key("BB");
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals("Aa", keyMapper.get(first));
+        Assert.assertEquals("BB", keyMapper.get(second));
+        Assert.assertEquals(first, keyMapper.key("Aa"));
+        Assert.assertEquals(second, keyMapper.key("BB"));
+    }
+
+    @Test
+    public void key_sameHashCodeMappedOneAtATime_distinctKeys() {
+        String first = keyMapper.key("Aa");
+        keyMapper.remove("Aa");
+        Assert.assertNotEquals(first, keyMapper.key("BB"));
+        Assert.assertNull(keyMapper.get(first));
+    }
+
+    @Test
+    public void key_sameSerializedFormMappedTogether_keysNeverReused() {
+        ComboBoxStableKeyMapper<Id> mapper = new ComboBoxStableKeyMapper<>(
+                item -> false);
+        // Not equal, but serialized to the same bytes
+        Id first = new Id("a");
+        Id second = new Id("a");
+        String firstKey = mapper.key(first);
+        String secondKey = mapper.key(second);
+        Assert.assertNotEquals(firstKey, secondKey);
+        Assert.assertSame(first, mapper.get(firstKey));
+        Assert.assertSame(second, mapper.get(secondKey));
+
+        // Freed keys are not given to other identifiers
+        mapper.removeAll();
+        Id third = new Id("a");
+        String thirdKey = mapper.key(third);
+        Assert.assertNotEquals(firstKey, thirdKey);
+        Assert.assertNotEquals(secondKey, thirdKey);
+        Assert.assertEquals(secondKey, mapper.key(second));
+        Assert.assertEquals(firstKey, mapper.key(first));
+    }
+
+    @Test
+    public void key_sameStringRepresentation_distinctKeys() {
+        ComboBoxStableKeyMapper<Object> mapper = new ComboBoxStableKeyMapper<>(
+                item -> false);
+        String intKey = mapper.key(1);
+        String longKey = mapper.key(1L);
+        String stringKey = mapper.key("1");
+        Assert.assertNotEquals(intKey, longKey);
+        Assert.assertNotEquals(intKey, stringKey);
+        Assert.assertNotEquals(longKey, stringKey);
+        Assert.assertEquals(1L, mapper.get(longKey));
+    }
+
+    @Test
+    public void key_null_doesNotClash() {
+        String nullKey = keyMapper.key(null);
+        Assert.assertNotEquals(nullKey, keyMapper.key("null"));
+        Assert.assertEquals("null", keyMapper.get(keyMapper.key("null")));
+        Assert.assertFalse(keyMapper.has(null));
+    }
+
+    @Test
+    public void remove_selected_keptUntilPurged() {
+        String key = keyMapper.key("a");
+        selected.add("a");
+        keyMapper.remove("a");
+        keyMapper.purge();
+        Assert.assertEquals("a", keyMapper.get(key));
+
+        selected.clear();
+        keyMapper.purge();
+        Assert.assertNull(keyMapper.get(key));
+        Assert.assertFalse(keyMapper.has("a"));
+    }
+
+    @Test
+    public void refresh_replacesItemWithSameId() {
+        keyMapper.setIdentifierGetter(item -> item.charAt(0));
+        String key = keyMapper.key("a1");
+        keyMapper.refresh("a2");
+        Assert.assertEquals("a2", keyMapper.get(key));
+        Assert.assertEquals(key, keyMapper.key("a3"));
+    }
+
+    private static final class Id implements Serializable {
+        private final String value;
+
+        private Id(String value) {
+            this.value = value;
+        }
+    }
+}
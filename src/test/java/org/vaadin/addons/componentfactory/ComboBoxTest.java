@@ -0,0 +1,84 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.data.provider.ListDataProvider;
+import com.vaadin.flow.data.provider.Query;
+import com.vaadin.flow.function.SerializablePredicate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ComboBoxTest {
+
+    private TestUI ui;
+    private CountingDataProvider dataProvider;
+    private ComboBox<String> comboBox;
+
+    @Before
+    public void setUp() {
+        ui = new TestUI();
+        dataProvider = new CountingDataProvider();
+        comboBox = new ComboBox<>();
+        comboBox.setDataProvider(dataProvider);
+    }
+
+    @After
+    public void tearDown() {
+        TestUI.clearCurrent();
+    }
+
+    @Test
+    public void attach_closed_dataProviderNotQueried() {
+        ui.add(comboBox);
+        ui.respond();
+
+        Assert.assertEquals(0, dataProvider.queryCount);
+    }
+
+    @Test
+    public void setOpened_dataLoaded() {
+        ui.add(comboBox);
+        ui.respond();
+
+        comboBox.setOpened(true);
+        List<?> updates = TestUI.getUpdates(ui.respond());
+        Assert.assertTrue(dataProvider.queryCount > 0);
+        Assert.assertFalse(updates.isEmpty());
+    }
+
+    private static class CountingDataProvider
+            extends ListDataProvider<String> {
+        private int queryCount;
+
+        private CountingDataProvider() {
+            super(createItems());
+        }
+
+        @Override
+        public Stream<String> fetch(
+                Query<String, SerializablePredicate<String>> query) {
+            queryCount++;
+            return super.fetch(query);
+        }
+
+        @Override
+        public int size(
+                Query<String, SerializablePredicate<String>> query) {
+            queryCount++;
+            return super.size(query);
+        }
+
+        private static List<String> createItems() {
+            List<String> items = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                items.add("Item " + i);
+            }
+            return items;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.vaadin.addons.componentfactory;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.internal.PendingJavaScriptInvocation;
+import com.vaadin.flow.server.DefaultDeploymentConfiguration;
+import com.vaadin.flow.server.VaadinService;
+import com.vaadin.flow.server.VaadinServlet;
+import com.vaadin.flow.server.VaadinServletService;
+import com.vaadin.flow.server.VaadinSession;
+import elemental.json.JsonObject;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * UI with a session that is always locked by the test thread, which collects
+ * the JavaScript calls that would be sent to the browser
+ */
+class TestUI extends UI {
+
+    TestUI() {
+        VaadinService service = new VaadinServletService(new VaadinServlet(),
+                new DefaultDeploymentConfiguration(TestUI.class,
+                        new Properties()));
+        VaadinSession session = new TestSession(service);
+        VaadinSession.setCurrent(session);
+        getInternals().setSession(session);
+        UI.setCurrent(this);
+    }
+
+    /**
+     * Runs the tasks that run before a response is written, and gets the
+     * JavaScript calls of the response
+     */
+    List<PendingJavaScriptInvocation> respond() {
+        getInternals().getStateTree().runExecutionsBeforeClientResponse();
+        // Marks the nodes as initialized in the client, like writing the
+        // changes to the response does
+        getInternals().getStateTree().collectChanges(change -> {
+        });
+        return getInternals().dumpPendingJavaScriptInvocations();
+    }
+
+    /**
+     * Gets the updates sent with {@code $connector.applyUpdate} in the
+     * JavaScript calls of a response
+     */
+    static List<JsonObject> getUpdates(
+            List<PendingJavaScriptInvocation> invocations) {
+        return invocations.stream()
+                .filter(invocation -> invocation.getInvocation()
+                        .getExpression().contains("$connector.applyUpdate"))
+                .map(invocation -> {
+                    List<Object> parameters = invocation.getInvocation()
+                            .getParameters();
+                    return (JsonObject) parameters.get(parameters.size() - 1);
+                }).collect(Collectors.toList());
+    }
+
+    static void clearCurrent() {
+        UI.setCurrent(null);
+        VaadinSession.setCurrent(null);
+    }
+
+    private static final class TestSession extends VaadinSession {
+
+        private TestSession(VaadinService service) {
+            super(service);
+        }
+
+        @Override
+        public boolean hasLock() {
+            return true;
+        }
+    }
+}